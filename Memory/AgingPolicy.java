@@ -0,0 +1,55 @@
+package osp.Memory;
+
+/**
+   Aging, an approximation of LRU. Every frame has an 8-bit age counter.
+   On each replacement the counters are shifted right and the reference
+   bit is shifted in at the top, then the reference bits are cleared.
+   The victim is the replaceable frame with the smallest counter; a clean
+   frame wins a tie because it does not need a swap out.
+
+   @OSPProject Memory
+ */
+class AgingPolicy implements ReplacementPolicy {
+
+	private int[] age; // Age counter of each frame, indexed by frame ID
+
+	AgingPolicy() {
+		age = new int[MMU.getFrameTableSize()];
+	}
+
+	public String getName() {
+		return "aging";
+	}
+
+	public FrameTableEntry selectVictim(PageTableEntry page) {
+		if (PageFaultHandler.numFreeFrames() > 0) // Use a free frame if there is one
+			return PageFaultHandler.getFreeFrame();
+
+		FrameTableEntry victim = null;
+		for (int i=0; i<MMU.getFrameTableSize(); i++) {
+			FrameTableEntry frame = MMU.getFrame(i);
+			MemoryStats.sweepStep();
+			age[i] = (age[i] >>> 1) | (frame.isReferenced() ? 0x80 : 0); // Shift in the reference bit
+			frame.clearReferenced();
+
+			if (frame.getLockCount() > 0 || frame.isReserved() || frame.getPage() == null)
+				continue;
+			if (victim == null
+					|| age[i] < age[victim.getID()]
+					|| (age[i] == age[victim.getID()] && victim.isDirty() && !frame.isDirty()))
+				victim = frame;
+		}
+		return victim;
+	}
+
+	public void pageIn(FrameTableEntry frame) {
+		age[frame.getID()] = 0x80; // Just referenced
+	}
+
+	public void pageOut(FrameTableEntry frame, PageTableEntry page) {
+		age[frame.getID()] = 0;
+	}
+
+	public void reference(FrameTableEntry frame, int referenceType) {
+	}
+}
@@ -0,0 +1,108 @@
+package osp.Memory;
+import java.util.*;
+
+/**
+   Adaptive replacement cache (ARC). Resident pages are kept on two LRU
+   lists: t1 holds pages referenced once since they were brought in, t2
+   pages referenced again. b1 and b2 remember the pages most recently
+   evicted from t1 and t2. A fault on a page remembered in b1 grows the
+   target size p of t1, a fault on a page remembered in b2 shrinks it.
+
+   Lists are ordered from least to most recently used.
+
+   @OSPProject Memory
+ */
+class ArcPolicy implements ReplacementPolicy {
+
+	private LinkedHashSet<PageTableEntry> t1 = new LinkedHashSet<PageTableEntry>();
+	private LinkedHashSet<PageTableEntry> t2 = new LinkedHashSet<PageTableEntry>();
+	private LinkedHashSet<PageTableEntry> b1 = new LinkedHashSet<PageTableEntry>();
+	private LinkedHashSet<PageTableEntry> b2 = new LinkedHashSet<PageTableEntry>();
+	private int c; // Cache size: the number of frames
+	private int p; // Target size of t1
+
+	ArcPolicy() {
+		c = MMU.getFrameTableSize();
+		p = 0;
+	}
+
+	public String getName() {
+		return "arc";
+	}
+
+	public FrameTableEntry selectVictim(PageTableEntry page) {
+		if (PageFaultHandler.numFreeFrames() > 0) // Use a free frame if there is one
+			return PageFaultHandler.getFreeFrame();
+
+		FrameTableEntry victim;
+		if (!t1.isEmpty() && (t1.size() > p || (b2.contains(page) && t1.size() == p))) {
+			victim = lruReplaceable(t1); // Replace from t1
+			if (victim == null)
+				victim = lruReplaceable(t2);
+		}
+		else {
+			victim = lruReplaceable(t2); // Replace from t2
+			if (victim == null)
+				victim = lruReplaceable(t1);
+		}
+		return victim;
+	}
+
+	/**
+	Returns the frame of the least recently used page in list that is
+	neither locked nor reserved, or null
+	 */
+	private FrameTableEntry lruReplaceable(LinkedHashSet<PageTableEntry> list) {
+		for (PageTableEntry entry : list) {
+			FrameTableEntry frame = entry.getFrame();
+			MemoryStats.sweepStep();
+			if (frame != null && frame.getLockCount() == 0 && !frame.isReserved())
+				return frame;
+		}
+		return null;
+	}
+
+	public void pageIn(FrameTableEntry frame) {
+		PageTableEntry page = frame.getPage();
+
+		if (b1.remove(page)) { // Recency list was too small
+			p = Math.min(c, p + Math.max(b2.size() / Math.max(b1.size(), 1), 1));
+			t2.add(page);
+		}
+		else if (b2.remove(page)) { // Frequency list was too small
+			p = Math.max(0, p - Math.max(b1.size() / Math.max(b2.size(), 1), 1));
+			t2.add(page);
+		}
+		else { // Brand new page
+			if (t1.size() + b1.size() >= c && !b1.isEmpty())
+				removeHead(b1);
+			else if (t1.size() + t2.size() + b1.size() + b2.size() >= 2*c && !b2.isEmpty())
+				removeHead(b2);
+			t1.add(page);
+		}
+	}
+
+	public void pageOut(FrameTableEntry frame, PageTableEntry page) {
+		if (page == null) // Page is still resident, only the frame went
+			return;
+		if (t1.remove(page)) // Remember the page as a ghost
+			b1.add(page);
+		else if (t2.remove(page))
+			b2.add(page);
+
+		while (b1.size() + b2.size() > c) // Ghost lists never hold more than c pages
+			removeHead(b1.size() >= b2.size() ? b1 : b2);
+	}
+
+	public void reference(FrameTableEntry frame, int referenceType) {
+		PageTableEntry page = frame.getPage();
+		if (t1.remove(page) || t2.remove(page)) // Hit: move to MRU end of t2
+			t2.add(page);
+	}
+
+	private static void removeHead(LinkedHashSet<PageTableEntry> list) {
+		Iterator<PageTableEntry> it = list.iterator();
+		it.next();
+		it.remove();
+	}
+}
@@ -0,0 +1,275 @@
+package osp.Memory;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import osp.Hardware.*;
+
+/**
+   Binary snapshot of the memory manager: the frame table, the page
+   table of every task that holds memory and the replacement cursor.
+   It is written through a memory-mapped file to the path in the
+   osp.memory.checkpoint property by MMU.atError() and MMU.atWarning(),
+   or on demand by save(). load() reads a snapshot back for analysis,
+   and main() prints a summary of one:
+
+       java osp.Memory.Checkpoint memory.ckpt
+
+   The file starts with a 32-byte header: the magic number 0x4F535043
+   ("OSPC"), the format version, the simulated time, the number of
+   frames, MMU.Cursor, the number of page tables and the length of the
+   reason text that follows it. Then come 12 bytes per frame (owner
+   task ID or -1, page number or -1, flags, lock count) and, per page
+   table, its task ID, its size and 5 bytes per page (frame ID or -1,
+   flags). All values are big-endian.
+
+   @OSPProject Memory
+ */
+public class Checkpoint {
+
+	static final int MAGIC = 0x4F535043;
+	static final int VERSION = 1;
+	static final int HEADER = 32;
+	static final int FRAME = 12;
+	static final int PAGE = 5;
+
+	// Frame flags
+	public static final int REFERENCED = 1;
+	public static final int DIRTY = 2;
+	public static final int RESERVED = 4;
+	public static final int SHARED = 8;
+	public static final int SWAPCACHE = 16;
+
+	// Page flags
+	public static final int VALID = 1;
+	public static final int BACKED = 2;
+	public static final int HUGE = 4;
+	public static final int PREFETCHED = 8;
+
+	public long tick;
+	public int cursor;
+	public String reason;
+	public int[] frameOwners; // Task ID, -1 if the frame is unused
+	public int[] framePages;
+	public int[] frameFlags;
+	public int[] frameLocks;
+	public int[] taskIDs;
+	public int[][] pageFrames; // Per page table, frame ID of each page or -1
+	public int[][] pageFlags;
+
+	private static String path; // Written on error and warning if set
+
+	/**
+	Reads osp.memory.checkpoint. Called by MMU.init().
+	 */
+	static void init() {
+		path = System.getProperty("osp.memory.checkpoint");
+	}
+
+	/**
+	Writes a snapshot to osp.memory.checkpoint, if it is set
+	 */
+	static void saveOn(String reason) {
+		if (path != null)
+			save(path, reason);
+	}
+
+	/**
+	Writes a snapshot of the memory manager to the file at path
+
+	@return false if the file could not be written
+	 */
+	public static boolean save(String path, String reason) {
+		byte[] text = reason.getBytes();
+		int frames = MMU.getFrameTableSize();
+		long size = HEADER + text.length + (long) frames * FRAME;
+		for (PageTable pageTable : PageTable.tables)
+			size += 8 + (long) pageTable.pages.length * PAGE;
+
+		try {
+			RandomAccessFile file = new RandomAccessFile(path, "rw");
+			try {
+				file.setLength(size); // Drop the tail of an older, larger snapshot
+				MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+				buffer.putInt(MAGIC);
+				buffer.putInt(VERSION);
+				buffer.putLong(HClock.get());
+				buffer.putInt(frames);
+				buffer.putInt(MMU.Cursor);
+				buffer.putInt(PageTable.tables.size());
+				buffer.putInt(text.length);
+				buffer.put(text);
+
+				for (int i=0; i<frames; i++)
+					putFrame(buffer, MMU.getFrame(i));
+
+				for (PageTable pageTable : PageTable.tables) {
+					buffer.putInt(pageTable.getTask().getID());
+					buffer.putInt(pageTable.pages.length);
+					for (PageTableEntry page : pageTable.pages)
+						putPage(buffer, page);
+				}
+				buffer.force();
+			}
+			finally {
+				file.close();
+			}
+			return true;
+		}
+		catch (IOException e) {
+			System.err.println("Cannot write memory checkpoint " + path + ": " + e);
+			return false;
+		}
+	}
+
+	private static void putFrame(ByteBuffer buffer, FrameTableEntry frame) {
+		int owner = -1;
+		int page = -1;
+		if (frame.getPage() != null) {
+			owner = frame.getPage().getTask().getID();
+			page = frame.getPage().getID();
+		}
+		else if (frame.isReserved())
+			owner = frame.getReserved().getID();
+
+		int flags = (frame.isReferenced() ? REFERENCED : 0)
+				| (frame.isDirty() ? DIRTY : 0)
+				| (frame.isReserved() ? RESERVED : 0)
+				| (frame.isShared() ? SHARED : 0)
+				| (frame.heldBySwapCache ? SWAPCACHE : 0);
+		buffer.putInt(owner);
+		buffer.putInt(page);
+		buffer.putShort((short) flags);
+		buffer.putShort((short) frame.getLockCount());
+	}
+
+	private static void putPage(ByteBuffer buffer, PageTableEntry page) {
+		int flags = (page.isValid() ? VALID : 0)
+				| (page.backed ? BACKED : 0)
+				| (page.huge ? HUGE : 0)
+				| (page.prefetched ? PREFETCHED : 0);
+		buffer.putInt(page.isValid() && page.getFrame() != null ? page.getFrame().getID() : -1);
+		buffer.put((byte) flags);
+	}
+
+	/**
+	Reads a snapshot written by save()
+	 */
+	public static Checkpoint load(String path) throws IOException {
+		FileChannel channel = new RandomAccessFile(path, "r").getChannel();
+		try {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.remaining() < HEADER || buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+				throw new IOException(path + " is not a memory checkpoint");
+
+			Checkpoint checkpoint = new Checkpoint();
+			checkpoint.tick = buffer.getLong();
+			int frames = buffer.getInt();
+			checkpoint.cursor = buffer.getInt();
+			int tables = buffer.getInt();
+			byte[] text = new byte[buffer.getInt()];
+			buffer.get(text);
+			checkpoint.reason = new String(text);
+
+			checkpoint.frameOwners = new int[frames];
+			checkpoint.framePages = new int[frames];
+			checkpoint.frameFlags = new int[frames];
+			checkpoint.frameLocks = new int[frames];
+			for (int i=0; i<frames; i++) {
+				checkpoint.frameOwners[i] = buffer.getInt();
+				checkpoint.framePages[i] = buffer.getInt();
+				checkpoint.frameFlags[i] = buffer.getShort();
+				checkpoint.frameLocks[i] = buffer.getShort();
+			}
+
+			checkpoint.taskIDs = new int[tables];
+			checkpoint.pageFrames = new int[tables][];
+			checkpoint.pageFlags = new int[tables][];
+			for (int t=0; t<tables; t++) {
+				checkpoint.taskIDs[t] = buffer.getInt();
+				int pages = buffer.getInt();
+				checkpoint.pageFrames[t] = new int[pages];
+				checkpoint.pageFlags[t] = new int[pages];
+				for (int i=0; i<pages; i++) {
+					checkpoint.pageFrames[t][i] = buffer.getInt();
+					checkpoint.pageFlags[t][i] = buffer.get();
+				}
+			}
+			return checkpoint;
+		}
+		catch (BufferUnderflowException e) {
+			throw new IOException(path + " is truncated");
+		}
+		finally {
+			channel.close();
+		}
+	}
+
+	/**
+	Returns the number of valid pages whose frame does not point back to
+	them, and of frames whose page does not point back to them. Shared
+	frames are mapped by pages that are not their owner, so only the
+	owner is checked for them.
+	 */
+	public int countMismatches() {
+		int mismatches = 0;
+		for (int t=0; t<taskIDs.length; t++) {
+			for (int i=0; i<pageFrames[t].length; i++) {
+				int frame = pageFrames[t][i];
+				if (frame < 0)
+					continue;
+				boolean owner = frameOwners[frame] == taskIDs[t] && framePages[frame] == i;
+				if (!owner && (frameFlags[frame] & SHARED) == 0)
+					mismatches++;
+			}
+		}
+		for (int f=0; f<frameOwners.length; f++) {
+			if (framePages[f] < 0)
+				continue;
+			int t = indexOf(frameOwners[f]);
+			if (t < 0 || pageFrames[t][framePages[f]] != f)
+				mismatches++;
+		}
+		return mismatches;
+	}
+
+	private int indexOf(int taskID) {
+		for (int t=0; t<taskIDs.length; t++)
+			if (taskIDs[t] == taskID)
+				return t;
+		return -1;
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length != 1) {
+			System.err.println("usage: java osp.Memory.Checkpoint <checkpoint>");
+			System.exit(1);
+		}
+
+		Checkpoint c = load(args[0]);
+		int used = 0, dirty = 0, reserved = 0, locked = 0, shared = 0;
+		for (int f=0; f<c.frameOwners.length; f++) {
+			if (c.framePages[f] >= 0)
+				used++;
+			if ((c.frameFlags[f] & DIRTY) != 0)
+				dirty++;
+			if ((c.frameFlags[f] & RESERVED) != 0)
+				reserved++;
+			if ((c.frameFlags[f] & SHARED) != 0)
+				shared++;
+			if (c.frameLocks[f] > 0)
+				locked++;
+		}
+
+		System.out.println("Checkpoint at tick " + c.tick + " (" + c.reason + "), cursor " + c.cursor);
+		System.out.println(c.frameOwners.length + " frames: " + used + " used, " + dirty + " dirty, "
+				+ reserved + " reserved, " + locked + " locked, " + shared + " shared");
+		for (int t=0; t<c.taskIDs.length; t++) {
+			int valid = 0;
+			for (int i=0; i<c.pageFlags[t].length; i++)
+				if ((c.pageFlags[t][i] & VALID) != 0)
+					valid++;
+			System.out.println("task " + c.taskIDs[t] + ": " + valid + " of " + c.pageFlags[t].length + " pages valid");
+		}
+		System.out.println(c.countMismatches() + " frame/page mismatches");
+	}
+}
@@ -0,0 +1,54 @@
+package osp.Memory;
+
+/**
+   CLOCK (plain second chance). The hand is MMU.Cursor. A referenced frame
+   has its reference bit cleared and is skipped; the first unreferenced
+   frame that is neither locked nor reserved is the victim, dirty or not.
+   Locked, reserved and empty frames are skipped a word at a time using
+   the FrameBits mirror.
+
+   @OSPProject Memory
+ */
+class ClockPolicy implements ReplacementPolicy {
+
+	public String getName() {
+		return "clock";
+	}
+
+	public FrameTableEntry selectVictim(PageTableEntry page) {
+		if (PageFaultHandler.numFreeFrames() > 0) // Use a free frame if there is one
+			return PageFaultHandler.getFreeFrame();
+
+		// Two passes are enough: the first one clears every reference bit
+		int counter = 0;
+		while (counter < MMU.getFrameTableSize()*2) {
+			// Skip, 64 frames at a time, frames that are locked, reserved or empty
+			int next = FrameBits.nextReplaceable(MMU.Cursor);
+			if (next == MMU.getFrameTableSize()) { // Nothing up to the end, wrap around
+				counter += MMU.getFrameTableSize() - MMU.Cursor;
+				MemoryStats.sweepSteps(MMU.getFrameTableSize() - MMU.Cursor); // Skipped frames were still swept
+				MMU.Cursor = 0;
+				continue;
+			}
+			counter += next - MMU.Cursor + 1;
+			FrameTableEntry frame = MMU.getFrame(next);
+			MemoryStats.sweepSteps(next - MMU.Cursor + 1); // The skipped frames and this one
+			MMU.Cursor = (next + 1) % MMU.getFrameTableSize(); // Advance the hand
+
+			if (frame.isReferenced()) // Give it a second chance
+				frame.clearReferenced();
+			else
+				return frame;
+		}
+		return null;
+	}
+
+	public void pageIn(FrameTableEntry frame) {
+	}
+
+	public void pageOut(FrameTableEntry frame, PageTableEntry page) {
+	}
+
+	public void reference(FrameTableEntry frame, int referenceType) {
+	}
+}
@@ -0,0 +1,92 @@
+package osp.Memory;
+
+/**
+   Enhanced second chance (ESC). The sweep starts at MMU.Cursor, clears
+   reference bits and frees clean unreferenced frames until MMU.wantFree
+   frames are free. If one full pass does not free enough frames, the
+   first dirty frame found is returned and must be swapped out.
+
+   Frames that are unreferenced and locked, reserved or empty are skipped
+   a word at a time using the FrameBits mirror.
+
+   @OSPProject Memory
+ */
+class EscPolicy implements ReplacementPolicy {
+
+	public String getName() {
+		return "esc";
+	}
+
+	// Author: Dareen Bukhari   - 1607281
+	//         Nada Abughazalah - 1606827
+	// Last Update: April 18, 2020
+	public FrameTableEntry selectVictim(PageTableEntry page) {
+
+		boolean i = true;
+		int counter = 0;
+		int frameID = 0;
+		boolean frameIDFlag = false;
+		///Phase I
+		while(i) { 
+
+			if (PageFaultHandler.numFreeFrames() == MMU.wantFree) //If free frames equals wantFree
+				return PageFaultHandler.getFreeFrame();
+
+			// Skip, 64 frames at a time, the frames this step would leave untouched
+			int skip = FrameBits.nextEscCandidate(MMU.Cursor) - MMU.Cursor;
+			if (skip > 0) {
+				skip = Math.min(skip, MMU.getFrameTableSize()*2 - counter);
+				MemoryStats.sweepSteps(skip); // Skipped frames were still swept
+				MMU.Cursor = (MMU.Cursor + skip) % MMU.getFrameTableSize();
+				counter += skip;
+				if(counter == (MMU.getFrameTableSize()*2)) // If we have cycled through the whole frame
+					i = false; //Exit the while loop
+				continue;
+			}
+
+			FrameTableEntry frame = MMU.getFrame(MMU.Cursor);
+			MemoryStats.sweepStep();
+
+			if(frame.isReferenced() == true) //Frame is referenced
+				frame.clearReferenced(); //Set its reference bit to 0
+
+			// Checking for a clean page
+			else if (frame.getPage() != null // Page not null
+					&& frame.getLockCount()==0 // Not locked
+					&& !frame.isReserved() // Not reserved
+					&& !frame.isDirty()) // Not dirty 
+				PageFaultHandler.evict(frame); // Free the frame
+
+			// Get the ID of the first dirty frame if there aren't enough clean frames
+			if (frame.getLockCount()==0 
+					&& !frame.isReserved()
+					&& frame.isDirty()
+					&& !frameIDFlag) {
+				frameID = frame.getID();
+				frameIDFlag = true;
+			}
+
+			MMU.Cursor = (MMU.Cursor + 1) % MMU.getFrameTableSize(); // Increment the cursor
+
+			counter++; // Increment the counter
+			if(counter == (MMU.getFrameTableSize()*2)) // If we have cycled through the whole frame
+				i = false; //Exit the while loop
+		} // End while(i) 
+
+		///Phase II - iterated through the frame table and exited
+		if (frameIDFlag==true && PageFaultHandler.numFreeFrames() < MMU.wantFree) 
+			return MMU.getFrame(frameID); // Return first dirty frame
+
+		else //If no. of free frames not equal to wantFree
+			return PageFaultHandler.getFreeFrame();	
+	}
+
+	public void pageIn(FrameTableEntry frame) {
+	}
+
+	public void pageOut(FrameTableEntry frame, PageTableEntry page) {
+	}
+
+	public void reference(FrameTableEntry frame, int referenceType) {
+	}
+}
@@ -0,0 +1,124 @@
+package osp.Memory;
+
+/**
+   Struct-of-arrays mirror of the frame table. The referenced, dirty,
+   reserved, locked and mapped (holds a page) state of frame i is bit
+   i % 64 of word i / 64 of the matching array, so a sweep can test 64
+   frames with a few word operations instead of calling the getters of
+   64 FrameTableEntry objects.
+
+   The FrameTableEntry objects stay the authority. FrameTableEntry overrides
+   setDirty(), setReferenced(), incrementLockCount() and decrementLockCount(),
+   so the bits follow every change, including those made by OSP's devices and
+   interrupt handlers; updateState() syncs the page and reserved bits.
+
+   @OSPProject Memory
+ */
+class FrameBits {
+
+	static long[] referenced;
+	static long[] dirty;
+	static long[] reserved;
+	static long[] locked;
+	static long[] mapped;
+	private static int size;
+
+	static void init(int frames) {
+		size = frames;
+		int words = (frames + 63) / 64;
+		referenced = new long[words];
+		dirty = new long[words];
+		reserved = new long[words];
+		locked = new long[words];
+		mapped = new long[words];
+	}
+
+	static void set(long[] bits, int i, boolean value) {
+		if (value)
+			bits[i >>> 6] |= 1L << i;
+		else
+			bits[i >>> 6] &= ~(1L << i);
+	}
+
+	/**
+	Copies the state of frame into the mirror
+	 */
+	static void sync(FrameTableEntry frame) {
+		int i = frame.getID();
+		set(referenced, i, frame.isReferenced());
+		set(dirty, i, frame.isDirty());
+		set(reserved, i, frame.isReserved() || frame.heldBySwapCache); // Cache frames are never usable
+		set(locked, i, frame.getLockCount() > 0);
+		set(mapped, i, frame.getPage() != null);
+	}
+
+	/**
+	Returns the mask of valid frame bits in word w
+	 */
+	private static long validBits(int w) {
+		int last = size - w * 64;
+		return last >= 64 ? -1L : (1L << last) - 1;
+	}
+
+	/**
+	Returns true if every frame is locked or reserved
+	 */
+	static boolean allLockedOrReserved() {
+		for (int w=0; w<locked.length; w++) {
+			if (((locked[w] | reserved[w]) & validBits(w)) != validBits(w))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	Returns the first frame at or after from, up to the end of the table,
+	that a step of the ESC sweep would act on: a referenced frame, or an
+	unlocked, unreserved frame that holds a page or is dirty. Returns the
+	table size if there is none.
+	 */
+	static int nextEscCandidate(int from) {
+		for (int w = from >>> 6; w < referenced.length; w++) {
+			long active = referenced[w] | (~locked[w] & ~reserved[w] & (mapped[w] | dirty[w]));
+			active &= validBits(w);
+			if (w == from >>> 6)
+				active &= -1L << from; // Drop frames before from
+			if (active != 0)
+				return w * 64 + Long.numberOfTrailingZeros(active);
+		}
+		return size;
+	}
+
+	/**
+	Returns the first frame at or after from, up to the end of the table,
+	that holds a page and is neither locked nor reserved, or the table size
+	 */
+	static int nextReplaceable(int from) {
+		for (int w = from >>> 6; w < mapped.length; w++) {
+			long replaceable = mapped[w] & ~locked[w] & ~reserved[w] & validBits(w);
+			if (w == from >>> 6)
+				replaceable &= -1L << from; // Drop frames before from
+			if (replaceable != 0)
+				return w * 64 + Long.numberOfTrailingZeros(replaceable);
+		}
+		return size;
+	}
+
+	/**
+	Returns the first frame of an aligned run of n free frames, n a power
+	of 2 up to 64, or -1 if there is none. A free frame has none of the
+	five bits set.
+	 */
+	static int freeRun(int n) {
+		long run = n == 64 ? -1L : (1L << n) - 1;
+		for (int w=0; w<mapped.length; w++) {
+			long busy = referenced[w] | dirty[w] | reserved[w] | locked[w] | mapped[w] | ~validBits(w);
+			if (busy == -1L)
+				continue;
+			for (int b=0; b<64; b+=n)
+				if (((busy >>> b) & run) == 0)
+					return w * 64 + b;
+		}
+		return -1;
+	}
+}
@@ -1,4 +1,5 @@
-package osp.Memory; 
+package osp.Memory;
+import java.util.*;
 import osp.Tasks.*;
 import osp.Interrupts.*;
 import osp.Utilities.*;
@@ -13,6 +14,27 @@ frame of memory.
 
 public class FrameTableEntry extends IflFrameTableEntry {
 
+	// Free-frame list: free frames are linked through nextFree/prevFree,
+	// oldest first, so recently evicted frames stay on standby the longest
+	private static FrameTableEntry freeHead;
+	private static FrameTableEntry freeTail;
+	private static int freeCount;
+
+	private FrameTableEntry nextFree;
+	private FrameTableEntry prevFree;
+	private boolean onFreeList;
+
+	// Standby list: an evicted page whose contents are still in this free
+	// frame, until the frame is reserved for something else
+	PageTableEntry standbyPage;
+
+	// Frame holds compressed SwapCache pages: never free, never replaced
+	boolean heldBySwapCache;
+
+	// Pages mapping this frame besides getPage(), when PageMerger has
+	// merged identical pages into it; null if the frame is not shared
+	ArrayList<PageTableEntry> sharers;
+
     /**
        The frame constructor. Must have
 
@@ -22,12 +44,229 @@ public class FrameTableEntry extends IflFrameTableEntry {
 
        @OSPProject Memory
     */
-	
+
 	// Author: Dareen Bukhari - 1607281
 	// Last Update: April 6, 2020
-	
+
     public FrameTableEntry(int frameID) {
 
-    	 super(frameID); // Calls the superclass constructor 
+    	 super(frameID); // Calls the superclass constructor
     }
+
+	/**
+	Reserves the frame for task and records it in the task's page table,
+	so that do_deallocateMemory() can find it without a frame table scan.
+	A page on standby in the frame loses it.
+	 */
+	void reserve(TaskCB task) {
+		if (standbyPage != null) { // Frame is reused, its old contents are lost
+			standbyPage.getTask().getPageTable().standbyFrames.remove(this);
+			standbyPage.standbyFrame = null;
+			standbyPage = null;
+		}
+		setReserved(task);
+		task.getPageTable().reservedFrames.add(this);
+		updateState(); // Reserved frame leaves the free-frame list
+	}
+
+	/**
+	Un-reserves the frame if it is still reserved by task
+	 */
+	void unreserve(TaskCB task) {
+		if (getReserved() == task)
+			setUnreserved(task);
+		task.getPageTable().reservedFrames.remove(this);
+		updateState(); // Frame may have become free
+	}
+
+	/**
+	Sets the dirty bit and its FrameBits mirror. Overridden because OSP's
+	devices and interrupt handlers set the bit directly.
+	 */
+	public void setDirty(boolean dirty) {
+		super.setDirty(dirty);
+		FrameBits.set(FrameBits.dirty, getID(), dirty);
+	}
+
+	/**
+	Sets the reference bit and its FrameBits mirror
+	 */
+	public void setReferenced(boolean referenced) {
+		super.setReferenced(referenced);
+		FrameBits.set(FrameBits.referenced, getID(), referenced);
+	}
+
+	/**
+	Locks the frame for I/O and updates the FrameBits mirror
+	 */
+	public void incrementLockCount() {
+		super.incrementLockCount();
+		FrameBits.set(FrameBits.locked, getID(), true);
+	}
+
+	/**
+	Unlocks the frame after I/O and updates the FrameBits mirror
+	 */
+	public void decrementLockCount() {
+		super.decrementLockCount();
+		FrameBits.set(FrameBits.locked, getID(), getLockCount() > 0);
+	}
+
+	/**
+	Sets the reference bit, and the dirty bit for a write, on a memory
+	reference. A frame holding a page is never free, so the free-frame
+	list needs no update.
+	 */
+	void markReferenced(boolean write) {
+		setReferenced(true); // Set reference bit to true
+		if (write) // Only then, set the dirty bit to true
+			setDirty(true);
+	}
+
+	/**
+	Clears the reference bit during a replacement sweep
+	 */
+	void clearReferenced() {
+		setReferenced(false);
+	}
+
+	/**
+	Returns true if more than one page maps the frame
+	 */
+	boolean isShared() {
+		return sharers != null && !sharers.isEmpty();
+	}
+
+	/**
+	Adds page to the pages mapping this shared frame
+	 */
+	void addSharer(PageTableEntry page) {
+		if (sharers == null)
+			sharers = new ArrayList<PageTableEntry>();
+		sharers.add(page);
+	}
+
+	/**
+	Removes page from the pages mapping this shared frame. If page was
+	getPage(), one of the other pages takes its place.
+	 */
+	void removeSharer(PageTableEntry page) {
+		if (page == getPage())
+			setPage(sharers.remove(sharers.size() - 1));
+		else
+			sharers.remove(page);
+		if (sharers.isEmpty())
+			sharers = null;
+	}
+
+	/**
+	Returns true if a page of task maps the frame
+	 */
+	boolean isMappedBy(TaskCB task) {
+		if (getPage() != null && getPage().getTask() == task)
+			return true;
+		if (sharers != null)
+			for (PageTableEntry page : sharers)
+				if (page.getTask() == task)
+					return true;
+		return false;
+	}
+
+	/**
+	Removes the pages of task, which is going away, from this shared frame.
+	If no other task maps the frame, one page of task is left in it for
+	the caller to clear.
+
+	@return true if pages of other tasks still map the frame
+	 */
+	boolean detach(TaskCB task) {
+		Iterator<PageTableEntry> it = sharers.iterator();
+		while (it.hasNext())
+			if (it.next().getTask() == task)
+				it.remove();
+		if (getPage().getTask() == task && !sharers.isEmpty())
+			setPage(sharers.remove(sharers.size() - 1)); // Another task's page takes over
+		if (sharers.isEmpty())
+			sharers = null;
+		return getPage().getTask() != task;
+	}
+
+	/**
+	Empties the free-frame list. Called by MMU.init() before the frame
+	table is populated.
+	 */
+	static void resetFreeList() {
+		freeHead = null;
+		freeTail = null;
+		freeCount = 0;
+	}
+
+	/**
+	Returns true if the frame is free: not reserved, not locked, holds no
+	page, has both its referenced and dirty bits cleared and is not held
+	by the SwapCache.
+	 */
+	boolean isFree() {
+		return !heldBySwapCache
+				&& !isReserved() // Frame not reserved
+				&& getPage() == null // and page is null
+				&& getLockCount() == 0 // and frame not locked,
+				&& !isReferenced() // not referenced,
+				&& !isDirty(); // and not dirty
+	}
+
+	/**
+	Copies the frame's state into the FrameBits mirror and links the frame
+	into, or unlinks it from, the free-frame list so that the list matches
+	isFree(). Must be called after any change to the frame's page, reserved,
+	lock, referenced or dirty state.
+	 */
+	void updateState() {
+		FrameBits.sync(this);
+
+		boolean free = isFree();
+		if (free == onFreeList) // Nothing changed
+			return;
+
+		if (free) { // Append the frame to the tail of the list
+			nextFree = null;
+			prevFree = freeTail;
+			if (freeTail != null)
+				freeTail.nextFree = this;
+			else
+				freeHead = this;
+			freeTail = this;
+			freeCount++;
+		}
+		else { // Unlink the frame from the list
+			if (prevFree != null)
+				prevFree.nextFree = nextFree;
+			else
+				freeHead = nextFree;
+			if (nextFree != null)
+				nextFree.prevFree = prevFree;
+			else
+				freeTail = prevFree;
+			nextFree = null;
+			prevFree = null;
+			freeCount--;
+		}
+		onFreeList = free;
+	}
+
+	/**
+	Returns the number of frames on the free-frame list
+	 */
+	static int getFreeCount() {
+		return freeCount;
+	}
+
+	/**
+	Returns the frame at the head of the free-frame list, the one that
+	has been free the longest, or null if there is no free frame. The frame stays on the list until its state
+	changes and updateState() is called.
+	 */
+	static FrameTableEntry getFirstFree() {
+		return freeHead;
+	}
 }
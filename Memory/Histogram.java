@@ -0,0 +1,58 @@
+package osp.Memory;
+
+/**
+   A histogram of non-negative long values with power-of-two buckets:
+   bucket 0 counts the value 0 and bucket i counts values in
+   [2^(i-1), 2^i). Adding a value is O(1) and allocation-free.
+
+   @OSPProject Memory
+ */
+public class Histogram {
+
+	private long[] buckets = new long[64];
+	private long count;
+	private long sum;
+	private long max;
+
+	public void add(long value) {
+		if (value < 0)
+			value = 0;
+		buckets[64 - Long.numberOfLeadingZeros(value)]++;
+		count++;
+		sum += value;
+		if (value > max)
+			max = value;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getMax() {
+		return max;
+	}
+
+	public double getMean() {
+		return count == 0 ? 0 : (double) sum / count;
+	}
+
+	/**
+	Returns an upper bound of the given percentile (0 to 100): the upper
+	edge of the bucket the percentile falls in
+	 */
+	public long getPercentile(double percentile) {
+		long rank = (long) Math.ceil(count * percentile / 100.0);
+		long seen = 0;
+		for (int i=0; i<buckets.length; i++) {
+			seen += buckets[i];
+			if (seen >= rank && seen > 0)
+				return i == 0 ? 0 : Math.min(max, (1L << i) - 1);
+		}
+		return max;
+	}
+
+	public String toString() {
+		return "n=" + count + " mean=" + String.format("%.1f", getMean())
+				+ " p50<=" + getPercentile(50) + " p99<=" + getPercentile(99) + " max=" + max;
+	}
+}
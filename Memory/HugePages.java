@@ -0,0 +1,180 @@
+package osp.Memory;
+import osp.Threads.*;
+
+/**
+   Huge pages for tasks that fault sequentially. A huge page is an
+   aligned group of 2^osp.memory.hugepage.order pages mapped into an
+   aligned run of as many contiguous free frames by a single pagefault,
+   and cached in the TLB as one entry. When no such run is free, or a
+   page of the group is already in memory, the fault falls back to a
+   base page.
+
+   A task gets huge pages from its third consecutive sequential fault
+   on, or always with osp.memory.hugepage.always=true. Evicting any page
+   of a huge page splits it back into base pages, so replacement keeps
+   working on single frames.
+
+   OSP sizes the page table itself, one entry per base page, so the
+   saving is in pagefaults and TLB entries, not in page table size.
+   Runs are found on the FrameBits words, so the order is at most 6
+   (64 pages). The default order 0 turns huge pages off.
+
+   @OSPProject Memory
+ */
+class HugePages {
+
+	static int order; // Huge page is 2^order base pages, 0 if off
+	static int size;
+	private static boolean always;
+
+	private static long faults; // Huge pages mapped
+	private static long fallbacks; // Eligible faults that got a base page
+	private static long splits;
+
+	static void init() {
+		order = Math.max(0, Math.min(6, Integer.getInteger("osp.memory.hugepage.order", 0)));
+		while (order > 0 && (1 << order) > MMU.getFrameTableSize())
+			order--;
+		size = 1 << order;
+		always = Boolean.getBoolean("osp.memory.hugepage.always");
+		faults = 0;
+		fallbacks = 0;
+		splits = 0;
+	}
+
+	/**
+	Tries to map the whole huge page holding page into contiguous free
+	frames. page is swapped in first and left with its frame reserved,
+	for the pagefault handler to finish; the other pages of the huge page
+	are mapped here, unreferenced and clean.
+
+	@return the frame of page, or null to fall back to a base page. The
+	caller must check whether the thread got killed during the swap ins.
+	 */
+	static FrameTableEntry fault(ThreadCB thread, PageTableEntry page) {
+		if (size == 1)
+			return null;
+
+		PageTable pageTable = page.getTask().getPageTable();
+		if (page.getID() == pageTable.nextSequential)
+			pageTable.sequentialFaults++;
+		else
+			pageTable.sequentialFaults = 0;
+		pageTable.nextSequential = page.getID() + 1;
+		if (!always && pageTable.sequentialFaults < 2) // Not a sequential task yet
+			return null;
+
+		int base = page.getID() & -size;
+		if (!canMap(pageTable, base, page)) {
+			fallbacks++;
+			return null;
+		}
+		int first = FrameBits.freeRun(size);
+		if (first < 0) { // Free memory is fragmented
+			fallbacks++;
+			return null;
+		}
+
+		for (int i=0; i<size; i++) { // Claim the whole run up front
+			FrameTableEntry frame = MMU.getFrame(first + i);
+			PageTableEntry p = pageTable.pages[base + i];
+			frame.reserve(thread.getTask());
+			p.setFrame(frame);
+			if (p != page)
+				p.setValidatingThread(thread); // Threads touching the page meanwhile wait for it
+		}
+
+		FrameTableEntry frame = page.getFrame();
+		PageFaultHandler.swapIn(thread, page); // Demand page first
+		if (thread.getStatus() == ThreadCB.ThreadKill) {
+			release(thread, pageTable, base, base, first, page);
+			page.setFrame(null);
+			return frame;
+		}
+
+		for (int i=0; i<size; i++) { // Then the rest, in ascending order
+			PageTableEntry p = pageTable.pages[base + i];
+			if (p == page)
+				continue;
+			PageFaultHandler.swapIn(thread, p);
+			if (thread.getStatus() == ThreadCB.ThreadKill) { // Pages from p on are not mapped
+				release(thread, pageTable, base + i, base, first, page);
+				return frame;
+			}
+			FrameTableEntry f = p.getFrame();
+			PageFaultHandler.map(f, p);
+			p.huge = true;
+			f.setReferenced(false); // Not used yet
+			f.setDirty(false);
+			f.unreserve(thread.getTask());
+			p.setValidatingThread(null);
+			p.notifyThreads();
+		}
+		page.huge = true;
+		pageTable.nextSequential = base + size;
+		faults++;
+		return frame;
+	}
+
+	/**
+	Returns true if no other page of the huge page at base is in memory,
+	on its way in or on standby, and the task may take size more frames
+	 */
+	private static boolean canMap(PageTable pageTable, int base, PageTableEntry page) {
+		if (base + size > pageTable.pages.length)
+			return false;
+		if (PageFaultHandler.numFreeFrames() - size < MMU.wantFree) // Never take the reserve of free frames
+			return false;
+		int quota = PageFaultFrequency.getQuota(pageTable);
+		if (quota > 0 && pageTable.getResidentCount() + size > quota)
+			return false;
+
+		for (int i=base; i<base+size; i++) {
+			PageTableEntry p = pageTable.pages[i];
+			if (p != page && (p.isValid() || p.getValidatingThread() != null || PageFaultHandler.onStandby(p)))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	Gives back the frames of the pages from..base+size-1, which were not
+	mapped because the thread got killed. page is left to the caller.
+	 */
+	private static void release(ThreadCB thread, PageTable pageTable, int from, int base, int first, PageTableEntry page) {
+		for (int i=from; i<base+size; i++) {
+			PageTableEntry p = pageTable.pages[i];
+			MMU.getFrame(first + i - base).unreserve(thread.getTask());
+			if (p == page)
+				continue;
+			p.setFrame(null);
+			p.setValidatingThread(null);
+			p.notifyThreads();
+		}
+	}
+
+	/**
+	Splits the huge page holding page back into base pages. Called before
+	page is evicted.
+	 */
+	static void split(PageTableEntry page) {
+		PageTable pageTable = page.getTask().getPageTable();
+		int base = page.getID() & -size;
+		for (int i=base; i<base+size; i++)
+			pageTable.pages[i].huge = false;
+		MMU.tlb.invalidateHuge(pageTable, base);
+		splits++;
+	}
+
+	static long getFaults() {
+		return faults;
+	}
+
+	static long getFallbacks() {
+		return fallbacks;
+	}
+
+	static long getSplits() {
+		return splits;
+	}
+}
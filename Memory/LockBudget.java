@@ -0,0 +1,139 @@
+package osp.Memory;
+import osp.Threads.*;
+import osp.Devices.*;
+import osp.IFLModules.*;
+
+/**
+   Budget for pages locked by I/O. Every lock held by do_lock() for user
+   file I/O is charged to the page's task, and a lock that would go over
+   the task's budget or the system-wide budget waits until an unlock
+   makes room. Swap ins and swap outs done for pagefaults, prefetches and
+   the PageOutDaemon are not charged and never wait: a faulting thread
+   must not queue behind the device traffic it is trying to get past.
+   The system-wide budget always leaves osp.memory.lock.reserve frames
+   that cannot be locked, so a pagefault can still find a victim while
+   the devices are busy.
+
+   Charges are counted per lock, not per frame, so several locks on one
+   frame use several units of the budget. The locked frames can then
+   never exceed it. do_unlock() gets no IORB, so it cannot tell a charged
+   lock from a swap lock; each page counts its charged locks that are
+   held, and an unlock returns a charge only when that count is above
+   the frame's lock count. A charge is then never returned early.
+
+   osp.memory.lock.task caps the locks of one task and
+   osp.memory.lock.max the locks of all tasks. Both default to 0, no
+   cap, and the reserve defaults to 0, so by default nothing waits.
+
+   @OSPProject Memory
+ */
+class LockBudget {
+
+	private static int taskMax; // 0 if there is no per-task cap
+	private static int systemMax; // 0 if there is no system-wide cap
+	private static int charged; // Locks held by all tasks
+	private static SystemEvent unlocked; // Threads waiting for room wait on this
+
+	private static long waits; // Lock requests that had to wait
+
+	static void init() {
+		taskMax = Math.max(0, Integer.getInteger("osp.memory.lock.task", 0));
+		systemMax = Math.max(0, Integer.getInteger("osp.memory.lock.max", 0));
+		int reserve = Math.max(0, Integer.getInteger("osp.memory.lock.reserve", 0));
+		if (reserve > 0) { // Frames left for replacement
+			int limit = Math.max(1, MMU.getFrameTableSize() - reserve);
+			systemMax = systemMax == 0 ? limit : Math.min(systemMax, limit);
+		}
+		charged = 0;
+		unlocked = new SystemEvent("LockBudget");
+		waits = 0;
+	}
+
+	/**
+	Returns true if iorb locks page for swap I/O: it reads or writes the
+	page's task's swap file. Every swap in and swap out goes through that
+	file, and user FileRead and FileWrite requests never do.
+	 */
+	static boolean isSwapIO(PageTableEntry page, IORB iorb) {
+		return iorb.getOpenFile() == page.getTask().getSwapFile();
+	}
+
+	/**
+	Charges a lock on page to its task, first waiting while the task or
+	the system is at its budget.
+
+	@return false if the thread got killed while waiting
+	 */
+	static boolean acquire(PageTableEntry page, ThreadCB thread) {
+		PageTable pageTable = page.getTask().getPageTable();
+		if (overBudget(pageTable))
+			waits++;
+		while (overBudget(pageTable)) {
+			thread.suspend(unlocked); // Until an unlock makes room
+			if (thread.getStatus() == ThreadCB.ThreadKill)
+				return false;
+		}
+
+		pageTable.lockCharge++;
+		charged++;
+		return true;
+	}
+
+	/**
+	Records that a charged lock on page has been taken
+	 */
+	static void taken(PageTableEntry page) {
+		page.lockCharge++;
+	}
+
+	/**
+	Returns the charge of a lock on page that was never taken
+	 */
+	static void cancel(PageTableEntry page) {
+		uncharge(page.getTask().getPageTable());
+	}
+
+	/**
+	Called by do_unlock() after the frame's lock count went down. Returns
+	a charge to the budget if page now holds more charged locks than
+	locks, and wakes the waiting threads.
+	 */
+	static void unlock(PageTableEntry page) {
+		if (page.lockCharge <= page.getFrame().getLockCount()) // A swap lock went, or nothing is charged
+			return;
+		page.lockCharge--;
+		uncharge(page.getTask().getPageTable());
+	}
+
+	private static void uncharge(PageTable pageTable) {
+		if (pageTable.lockCharge == 0) // Already returned by releaseTask()
+			return;
+		pageTable.lockCharge--;
+		charged--;
+		unlocked.notifyThreads();
+	}
+
+	/**
+	Returns every lock still charged to pageTable, whose task is going away
+	 */
+	static void releaseTask(PageTable pageTable) {
+		if (pageTable.lockCharge == 0)
+			return;
+		charged -= pageTable.lockCharge;
+		pageTable.lockCharge = 0;
+		unlocked.notifyThreads();
+	}
+
+	private static boolean overBudget(PageTable pageTable) {
+		return (taskMax > 0 && pageTable.lockCharge >= taskMax)
+				|| (systemMax > 0 && charged >= systemMax);
+	}
+
+	static int getCharged() {
+		return charged;
+	}
+
+	static long getWaits() {
+		return waits;
+	}
+}
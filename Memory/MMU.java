@@ -20,6 +20,14 @@ public class MMU extends IflMMU {
 	public static int Cursor;
 	public static int wantFree;
 
+	// Page replacement policy, chosen by the osp.memory.replacement property
+	static ReplacementPolicy replacementPolicy;
+
+	// Address translation, computed once in init()
+	static int pageShift; // Number of offset bits: address >>> pageShift is the page number
+	static int pageNumberMask; // Keeps the page number inside the page table
+	static TLB tlb;
+
 	/**
         This method is called once before the simulation starts.
 		Can be used to initialize the frame table and other static variables.
@@ -32,8 +40,49 @@ public class MMU extends IflMMU {
 		Cursor = 0;
 		wantFree = 1;
 
-		for(int i=0; i< MMU.getFrameTableSize(); i++) // Initializing the frame entries 
+		FrameTableEntry.resetFreeList(); // Start with an empty free-frame list
+		FrameBits.init(getFrameTableSize()); // and an all-clear mirror
+		for(int i=0; i< MMU.getFrameTableSize(); i++) { // Initializing the frame entries 
 			setFrame(i, new FrameTableEntry(i)); // Set each entry to an object from FrameTableEntry
+			getFrame(i).updateState(); // Every frame starts out free
+		}
+
+		pageShift = getVirtualAddressBits() - getPageAddressBits(); // Page size is 2^pageShift
+		pageNumberMask = (1 << getPageAddressBits()) - 1;
+		tlb = new TLB(Integer.getInteger("osp.memory.tlb.size", 16));
+		PageFaultHandler.zeroFill = !"false".equalsIgnoreCase(System.getProperty("osp.memory.zerofill")); // On unless set to false
+
+		replacementPolicy = createReplacementPolicy(System.getProperty("osp.memory.replacement", "esc"));
+		PageOutDaemon.init();
+		Prefetcher.init();
+		SwapCluster.init();
+		SwapCache.init();
+		PageMerger.init();
+		LockBudget.init();
+		HugePages.init();
+		Checkpoint.init();
+		PageTable.tables.clear(); // Page tables of an earlier run
+		MemoryStats.init();
+		PageFaultFrequency.init();
+		TraceRecorder.init();
+	}
+
+	/**
+		Returns the replacement policy with the given name: esc, clock,
+		aging, wsclock or arc. Unknown names fall back to esc.
+	 */
+	static ReplacementPolicy createReplacementPolicy(String name) {
+		if (name.equalsIgnoreCase("clock"))
+			return new ClockPolicy();
+		if (name.equalsIgnoreCase("aging"))
+			return new AgingPolicy();
+		if (name.equalsIgnoreCase("wsclock"))
+			return new WSClockPolicy();
+		if (name.equalsIgnoreCase("arc"))
+			return new ArcPolicy();
+		if (!name.equalsIgnoreCase("esc"))
+			MyOut.print("osp.Memory.MMU", "Unknown replacement policy " + name + ", using esc");
+		return new EscPolicy();
 
 	}
 
@@ -62,10 +111,25 @@ public class MMU extends IflMMU {
 	// Last Update: April 14, 2020 
 	static public PageTableEntry do_refer(int memoryAddress,int referenceType, ThreadCB thread) {
 
-		int pageSize = (int) Math.pow(2, getVirtualAddressBits()-getPageAddressBits()); // Calculate the page size  	
-		int pageNumber = memoryAddress/pageSize; // Calculate the page number
+		int pageNumber = (memoryAddress >>> pageShift) & pageNumberMask; // Calculate the page number
+		if (TraceRecorder.isEnabled()) // Record the reference for offline replay
+			TraceRecorder.record(getPTBR().getTask().getID(), pageNumber, referenceType == MemoryWrite);
+
+		FrameTableEntry cached = tlb.lookup(getPTBR(), pageNumber, referenceType == MemoryWrite); // Try the TLB first
+		if (cached != null) { // TLB hit: the page is valid and the frame private or only read
+			cached.markReferenced(referenceType == MemoryWrite);
+			replacementPolicy.reference(cached, referenceType);
+			return tlb.getHitPage();
+		}
 
+		// TLB miss: walk the page table
 		PageTableEntry pageTableEntry = getPTBR().pages[pageNumber]; // Get the pageTableEntry that points to the passed memoryAddress
+		boolean hit = pageTableEntry.isValid(); // Page was in memory without a pagefault
+		if(referenceType == MemoryWrite && pageTableEntry.isValid()
+				&& pageTableEntry.getFrame().isShared()) { // Copy-on-write
+			PageMerger.unshare(pageTableEntry); // Page faults into a private frame below
+			hit = false;
+		}
 
 		if(pageTableEntry.isValid() == false) { // If page is invalid
 
@@ -84,13 +148,40 @@ public class MMU extends IflMMU {
 				return pageTableEntry;  // then return pageTableEntry and exit 		
 
 		} 
-		pageTableEntry.getFrame().setReferenced(true); // Set reference bit to true
-		if(referenceType == MemoryWrite) // If the reference type is MemoryWrite
-			pageTableEntry.getFrame().setDirty(true); // Only then, set the dirty bit to true
+		pageTableEntry.getFrame().markReferenced(referenceType == MemoryWrite); // Reference bit, and dirty bit on MemoryWrite
+		if(hit) { // The pagefault handler already told the policy about a faulted page
+			replacementPolicy.reference(pageTableEntry.getFrame(), referenceType);
+			if(pageTableEntry.prefetched) // First use of a prefetched page
+				Prefetcher.used(pageTableEntry);
+		}
+		if(pageTableEntry.isValid())
+			tlb.insert(pageTableEntry); // Cache the translation
 		return pageTableEntry; 			
 	}    
 
 
+	/**
+		Tells the TLB that the PTBR now points to pageTable. The TLB is
+		flushed if it holds translations of another page table.
+	 */
+	public static void switchTLB(PageTable pageTable) {
+		tlb.switchTo(pageTable);
+	}
+
+	/**
+		Returns the number of TLB hits since the simulation started
+	 */
+	public static long getTLBHits() {
+		return tlb.getHits();
+	}
+
+	/**
+		Returns the number of TLB misses since the simulation started
+	 */
+	public static long getTLBMisses() {
+		return tlb.getMisses();
+	}
+
 	/** Called by OSP after printing an error message. The student can
 		insert code here to print various tables and data structures
 		in their state just after the error happened.  The body can be
@@ -99,7 +190,8 @@ public class MMU extends IflMMU {
 		@OSPProject Memory
 	 */
 	public static void atError() {
-		// your code goes here (if needed)
+		MemoryStats.print("error");
+		Checkpoint.saveOn("error");
 	}
 
 	/** Called by OSP after printing a warning message. The student
@@ -110,6 +202,7 @@ public class MMU extends IflMMU {
       @OSPProject Memory
 	 */
 	public static void atWarning() {
-		// your code goes here (if needed)
+		MemoryStats.print("warning");
+		Checkpoint.saveOn("warning");
 	}
 }
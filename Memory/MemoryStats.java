@@ -0,0 +1,184 @@
+package osp.Memory;
+import osp.Utilities.*;
+
+/**
+   Counters and histograms of the memory module. PageFaultHandler
+   records every pagefault, swap in and swap out here, and the
+   replacement policies report each frame their sweep examines.
+
+   A snapshot is printed by MMU.atError() and MMU.atWarning(), and every
+   osp.memory.stats.period pagefaults (default 0, off).
+
+   @OSPProject Memory
+ */
+public class MemoryStats {
+
+	private static long faults;
+	private static long hardFaults;
+	private static long softFaults;
+	private static long failedFaults;
+	private static long notEnoughMemory;
+	private static long swapIns;
+	private static long swapOuts;
+	private static long zeroFills; // Swap ins skipped because the page had no copy yet
+	private static long sweepSteps; // Frames examined by all replacement sweeps so far
+
+	private static Histogram faultLatency; // Simulated ticks from fault to return
+	private static Histogram sweepLength; // Frames examined per victim selection
+
+	private static int period;
+
+	static void init() {
+		faults = hardFaults = softFaults = failedFaults = notEnoughMemory = 0;
+		swapIns = swapOuts = zeroFills = sweepSteps = 0;
+		faultLatency = new Histogram();
+		sweepLength = new Histogram();
+		period = Integer.getInteger("osp.memory.stats.period", 0);
+	}
+
+	/**
+	Records a finished pagefault
+
+	@param result the value do_handlePageFault() returned
+	@param soft true if the fault was served from the standby list
+	@param latency simulated ticks the fault took
+	 */
+	static void faulted(int result, boolean soft, long latency) {
+		faults++;
+		if (result == PageFaultHandler.SUCCESS) {
+			if (soft)
+				softFaults++;
+			else
+				hardFaults++;
+		}
+		else if (result == PageFaultHandler.NotEnoughMemory)
+			notEnoughMemory++;
+		else
+			failedFaults++;
+		faultLatency.add(latency);
+
+		if (period > 0 && faults % period == 0)
+			print("periodic snapshot");
+	}
+
+	static void swappedIn() {
+		swapIns++;
+	}
+
+	static void swappedOut() {
+		swapOuts++;
+	}
+
+	static void zeroFilled() {
+		zeroFills++;
+	}
+
+	/**
+	Called by a replacement policy for every frame its sweep examines
+	 */
+	static void sweepStep() {
+		sweepSteps++;
+	}
+
+	/**
+	Called by a replacement policy for frames its sweep passed over a
+	word at a time on the FrameBits mirror
+	 */
+	static void sweepSteps(int frames) {
+		sweepSteps += frames;
+	}
+
+	/**
+	Records how many frames were examined to select one victim
+	 */
+	static void victimSelected(long steps) {
+		sweepLength.add(steps);
+	}
+
+	static long getSweepSteps() {
+		return sweepSteps;
+	}
+
+	public static long getFaults() {
+		return faults;
+	}
+
+	public static long getHardFaults() {
+		return hardFaults;
+	}
+
+	public static long getSoftFaults() {
+		return softFaults;
+	}
+
+	public static long getFailedFaults() {
+		return failedFaults;
+	}
+
+	public static long getNotEnoughMemory() {
+		return notEnoughMemory;
+	}
+
+	public static long getSwapIns() {
+		return swapIns;
+	}
+
+	public static long getSwapOuts() {
+		return swapOuts;
+	}
+
+	public static long getZeroFills() {
+		return zeroFills;
+	}
+
+	public static long getSwapCacheHits() {
+		return SwapCache.getHits();
+	}
+
+	public static int getFreeFrames() {
+		return PageFaultHandler.numFreeFrames();
+	}
+
+	public static Histogram getFaultLatency() {
+		return faultLatency;
+	}
+
+	public static Histogram getSweepLength() {
+		return sweepLength;
+	}
+
+	/**
+	Returns the current counters as text, one item per line
+	 */
+	public static String snapshot() {
+		return "faults=" + faults
+				+ " hard=" + hardFaults
+				+ " soft=" + softFaults
+				+ " failed=" + failedFaults
+				+ " notEnoughMemory=" + notEnoughMemory
+				+ "\nswapIns=" + swapIns
+				+ " swapOuts=" + swapOuts
+				+ " zeroFills=" + zeroFills
+				+ " swapCacheHits=" + SwapCache.getHits()
+				+ " swapCachePages=" + SwapCache.size()
+				+ "\nmergedPages=" + PageMerger.getMerged()
+				+ " sharesBroken=" + PageMerger.getBroken()
+				+ "\nlocksCharged=" + LockBudget.getCharged()
+				+ " lockWaits=" + LockBudget.getWaits()
+				+ "\nhugePages=" + HugePages.getFaults()
+				+ " hugeFallbacks=" + HugePages.getFallbacks()
+				+ " hugeSplits=" + HugePages.getSplits()
+				+ " freeFrames=" + PageFaultHandler.numFreeFrames()
+				+ "\ntlbHits=" + MMU.getTLBHits()
+				+ " tlbMisses=" + MMU.getTLBMisses()
+				+ "\nfaultLatency: " + faultLatency
+				+ "\nsweepLength: " + sweepLength;
+	}
+
+	/**
+	Prints a snapshot through MyOut
+	 */
+	public static void print(String reason) {
+		MyOut.print("osp.Memory.MemoryStats", "Memory statistics (" + reason + "):\n" + snapshot());
+	}
+}
@@ -0,0 +1,34 @@
+package osp.Memory;
+import jdk.jfr.*;
+
+/**
+   JFR event committed by PageFaultHandler for every pagefault
+
+   @OSPProject Memory
+ */
+@Name("osp.memory.PageFault")
+@Label("Page Fault")
+@Category({"OSP", "Memory"})
+class PageFaultEvent extends Event {
+
+	@Label("Task")
+	int task;
+
+	@Label("Page")
+	int page;
+
+	@Label("Reference Type")
+	int referenceType;
+
+	@Label("Result")
+	String result;
+
+	@Label("Hard Fault")
+	boolean hard;
+
+	@Label("Soft Fault")
+	boolean soft;
+
+	@Label("Latency (simulated ticks)")
+	long latency;
+}
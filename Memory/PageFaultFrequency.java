@@ -0,0 +1,89 @@
+package osp.Memory;
+import java.util.*;
+import osp.Hardware.*;
+
+/**
+   Local frame allocation by page-fault frequency (PFF). Every task has a
+   frame quota between osp.memory.pff.min and osp.memory.pff.max frames.
+   When a task faults less than osp.memory.pff.low ticks after its previous
+   fault its quota grows by one frame; when it faults more than
+   osp.memory.pff.high ticks after it the quota shrinks by one frame.
+
+   A task that faults while it holds its quota or more replaces one of its
+   own pages, chosen by second chance over its resident set, instead of
+   taking a frame from the other tasks. Tasks under quota use free frames
+   and the global replacement policy as before.
+
+   Chosen with osp.memory.allocation=pff; the default, global, leaves
+   replacement purely global.
+
+   @OSPProject Memory
+ */
+class PageFaultFrequency {
+
+	private static boolean enabled;
+	private static int minFrames;
+	private static int maxFrames;
+	private static long low; // Faults closer than this grow the quota
+	private static long high; // Faults further apart than this shrink the quota
+
+	static void init() {
+		enabled = System.getProperty("osp.memory.allocation", "global").equalsIgnoreCase("pff");
+		minFrames = Math.max(1, Integer.getInteger("osp.memory.pff.min", 2));
+		maxFrames = Math.max(minFrames, Integer.getInteger("osp.memory.pff.max", MMU.getFrameTableSize() / 2));
+		low = Long.getLong("osp.memory.pff.low", 50);
+		high = Long.getLong("osp.memory.pff.high", 500);
+	}
+
+	static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	Adjusts the quota of the task that owns pageTable on a pagefault
+	 */
+	static void faulted(PageTable pageTable) {
+		if (!enabled)
+			return;
+
+		long now = HClock.get();
+		if (pageTable.frameQuota == 0) // First fault of the task
+			pageTable.frameQuota = minFrames;
+		else if (now - pageTable.lastFaultTime < low)
+			pageTable.frameQuota = Math.min(maxFrames, pageTable.frameQuota + 1);
+		else if (now - pageTable.lastFaultTime > high)
+			pageTable.frameQuota = Math.max(minFrames, pageTable.frameQuota - 1);
+		pageTable.lastFaultTime = now;
+	}
+
+	/**
+	Returns a frame of the task's own resident set to replace if the task
+	holds its quota or more, otherwise null. Referenced frames get a second
+	chance; if every frame is referenced, the first replaceable one is used.
+	 */
+	static FrameTableEntry selectVictim(PageTable pageTable) {
+		if (!enabled || pageTable.getResidentCount() < pageTable.frameQuota)
+			return null;
+
+		FrameTableEntry first = null;
+		for (FrameTableEntry frame : pageTable.residentFrames) { // Oldest resident frame first
+			MemoryStats.sweepStep();
+			if (frame.getLockCount() > 0 || frame.isReserved())
+				continue;
+			if (!frame.isReferenced())
+				return frame;
+			frame.clearReferenced(); // Second chance
+			if (first == null)
+				first = frame;
+		}
+		return first;
+	}
+
+	/**
+	Returns the frame quota of the task that owns pageTable, 0 before its
+	first pagefault or when local allocation is off
+	 */
+	public static int getQuota(PageTable pageTable) {
+		return pageTable.frameQuota;
+	}
+}
@@ -20,6 +20,9 @@ import osp.IFLModules.*;
  */
 
 public class PageFaultHandler extends IflPageFaultHandler {
+
+	// Zero-fill on demand, set by MMU.init() from the osp.memory.zerofill property
+	static boolean zeroFill;
 	/**
         This method handles a page fault.
 
@@ -82,6 +85,33 @@ public class PageFaultHandler extends IflPageFaultHandler {
 	//         Nada Abughazalah - 1606827
 	// Last Update: April 18, 2020
 	public static int do_handlePageFault(ThreadCB thread, int referenceType, PageTableEntry page) {
+		PageFaultEvent event = new PageFaultEvent();
+		event.begin();
+		long start = HClock.get();
+		boolean soft = onStandby(page);
+
+		int result = resolvePageFault(thread, referenceType, page);
+
+		long latency = HClock.get() - start;
+		MemoryStats.faulted(result, soft, latency);
+		if (event.shouldCommit()) {
+			event.task = page.getTask().getID();
+			event.page = page.getID();
+			event.referenceType = referenceType;
+			event.result = result == SUCCESS ? "SUCCESS" : result == NotEnoughMemory ? "NotEnoughMemory" : "FAILURE";
+			event.soft = soft && result == SUCCESS;
+			event.hard = !soft && result == SUCCESS;
+			event.latency = latency;
+			event.commit();
+		}
+		return result;
+	}
+
+	/**
+	Does the work of do_handlePageFault(), which records statistics
+	around it
+	 */
+	private static int resolvePageFault(ThreadCB thread, int referenceType, PageTableEntry page) {
 
 		// First, check for these cases: 1. Pagefault handler might be called incorrectly by other methods
 		if (page.isValid() == true) { // Check if page is valid
@@ -90,13 +120,25 @@ public class PageFaultHandler extends IflPageFaultHandler {
 			return FAILURE;
 		}
 
-		// 2. All frames are locked or reserved
-		int lockedReservedCount = 0;
-		for (int i=0; i<MMU.getFrameTableSize(); i++) { // Iterate through frame table entries
-			if (MMU.getFrame(i).isReserved()==true || MMU.getFrame(i).getLockCount()>0 ) // If frame i is reserved or locked
-				lockedReservedCount++; // Increment the counter
+		PageFaultFrequency.faulted(page.getTask().getPageTable()); // Adjust the task's frame quota
+
+		// The page may still be on standby in a free frame: relink it without I/O
+		if (onStandby(page)) {
+			FrameTableEntry frame = page.standbyFrame;
+			frame.reserve(thread.getTask()); // Takes the frame off the free-frame list and the standby list
+			page.setFrame(frame);
+			map(frame, page);
+			frame.setReferenced(true);
+			frame.setDirty(referenceType == MemoryWrite);
+			frame.unreserve(thread.getTask());
+			page.notifyThreads(); // Notify threads waiting on the page
+			PageOutDaemon.checkWatermark(); // The frame came off the free-frame list too
+			ThreadCB.dispatch(); // Call dispatch
+			return SUCCESS;
 		}
-		if (lockedReservedCount == MMU.getFrameTableSize()){ //If the counter equals the frame table size
+
+		// 2. All frames are locked or reserved
+		if (FrameBits.allLockedOrReserved()){ //Checked 64 frames at a time on the mirror
 			page.notifyThreads(); // Notify threads waiting on the page
 			ThreadCB.dispatch(); // Call dispatch
 			return NotEnoughMemory; // Return NotEnoughMemory and exit
@@ -109,10 +151,24 @@ public class PageFaultHandler extends IflPageFaultHandler {
 		thread.suspend(pfEvent); // Suspend thread on pfEevent
 
 		//Now, process the pagefault
-		if(numFreeFrames() > 0) {	//If there is a free frame, use it
+		frame = HugePages.fault(thread, page); // Whole huge page into contiguous free frames, if possible
+		boolean huge = frame != null;
+		if (!huge)
+			frame = PageFaultFrequency.selectVictim(page.getTask().getPageTable()); // Local victim if the task is over its quota
+		if (huge) { // Page is already swapped in
+			if (thread.getStatus() == ThreadKill) { //If pagefault-causing thread got killed waiting for swap in
+				page.notifyThreads(); // Notify threads waiting on the page
+				page.setValidatingThread(null);// Page fault is over, so validting thread becomes null
+				page.setFrame(null); // Set page's frame to null
+				pfEvent.notifyThreads(); // Notify the thread that caused the pagefault
+				ThreadCB.dispatch(); // Call dispatch
+				return FAILURE;
+			}
+		}
+		else if(frame == null && numFreeFrames() > 0) {	//If there is a free frame, use it
 			frame = getFreeFrame();
 			page.setFrame(frame);
-			frame.setReserved(thread.getTask()); 
+			frame.reserve(thread.getTask()); // Reserve the frame
 			swapIn(thread, page);
 
 			if (thread.getStatus() == ThreadKill) { //If pagefault-causing thread got killed waiting for swap out/swap in
@@ -126,12 +182,22 @@ public class PageFaultHandler extends IflPageFaultHandler {
 		}
 
 		else { 
-			frame  = SecondChance(); // Call a page replacement algorithm
-			frame.setReserved(thread.getTask()); // Reserve the frame
+			if (frame == null) { // Task is under its quota, replace globally
+				long steps = MemoryStats.getSweepSteps();
+				frame  = MMU.replacementPolicy.selectVictim(page); // Call the page replacement algorithm
+				MemoryStats.victimSelected(MemoryStats.getSweepSteps() - steps);
+			}
+			if (frame == null) { // Every frame is locked or reserved by now
+				page.setValidatingThread(null); // Page fault is over, so validting thread becomes null
+				page.notifyThreads(); // Notify threads waiting on the page
+				pfEvent.notifyThreads(); // Notify the thread that caused the pagefault
+				ThreadCB.dispatch(); // Call dispatch
+				return NotEnoughMemory;
+			}
+			frame.reserve(thread.getTask()); // Reserve the frame
 
 			if(frame.isDirty()==true) { //Frame is dirty
-				PageTableEntry p = frame.getPage(); // Store the page in p
-				swapOut(thread, frame); // Perform swap out
+				swapOut(thread, frame); // Perform swap out; neighbours are clustered by the page-out daemon only
 				if (thread.getStatus() == ThreadKill) {//If pagefault-causing thread got killed waiting for swap out/swap in
 					page.notifyThreads(); // Notify threads waiting on the page
 					page.setValidatingThread(null);// Page fault is over, so validting thread becomes null
@@ -140,45 +206,26 @@ public class PageFaultHandler extends IflPageFaultHandler {
 					ThreadCB.dispatch();
 					return FAILURE;
 				}
-				//Free the dirty frame and update 
-				frame.setReferenced(false); // Change reference bit to false
-				p.setValid(false); // Set valid bit to 0
-				p.setFrame(null); // Set page's frame to null
-				frame.setDirty(false); // Change dirty bit to false
-				frame.setPage(null); // Nullify the frame's page
-				page.setFrame(frame); // Set the page's frame
-
-				swapIn(thread, page); // Swap in the new page
-
-				if (thread.getStatus() == ThreadKill) {//If pagefault-causing thread got killed waiting for swap in
-					page.notifyThreads(); // Notify threads waiting on the page
-					page.setValidatingThread(null);// Page fault is over, so validting thread becomes null
-					page.setFrame(null); // Set page's frame to null
-					pfEvent.notifyThreads(); // Notify the thread that caused the pagefault
-					ThreadCB.dispatch(); // Call dispatch
-					return FAILURE;
-				}
-
 			} 
 
-			else { // Frame is NOT dirty
-				page.setFrame(frame); // Set the page's frame
-				swapIn(thread, page); // Swap in the new page
-				if (thread.getStatus() == ThreadKill) {//If pagefault-causing thread got killed waiting for swap out/swap in
-					page.notifyThreads(); // Notify threads waiting on the page
-					page.setValidatingThread(null);// Page fault is over, so validting thread becomes null
-					page.setFrame(null); // Set page's frame to null
-					pfEvent.notifyThreads(); // Notify the thread that caused the pagefault
-					ThreadCB.dispatch(); // Call dispatch
-					return FAILURE;
-				}
+			if (frame.getPage() != null) // Free the victim frame and update
+				evict(frame);
+			page.setFrame(frame); // Set the page's frame
+			swapIn(thread, page); // Swap in the new page
+
+			if (thread.getStatus() == ThreadKill) {//If pagefault-causing thread got killed waiting for swap in
+				page.notifyThreads(); // Notify threads waiting on the page
+				page.setValidatingThread(null);// Page fault is over, so validting thread becomes null
+				page.setFrame(null); // Set page's frame to null
+				pfEvent.notifyThreads(); // Notify the thread that caused the pagefault
+				ThreadCB.dispatch(); // Call dispatch
+				return FAILURE;
 			}
 
 		} // Page replacement done
 
 		// If all is well, update page table and frame table
-		page.setValid(true); // Set valid bit to 1
-		frame.setPage(page); // Set the frame's page to the new page
+		map(frame, page);
 		frame.setReferenced(true); // Set referenced bit to 1
 		// Dirty bit = 1 only if reference type is MemoryLock 
 		if (referenceType==MemoryLock || referenceType==MemoryRead)
@@ -187,10 +234,13 @@ public class PageFaultHandler extends IflPageFaultHandler {
 			frame.setDirty(true);
 
 		//Final steps
-		frame.setUnreserved(thread.getTask()); // Un-reserve the frame that satisfied the pagefult
+		frame.unreserve(thread.getTask()); // Un-reserve the frame that satisfied the pagefult
 		page.setValidatingThread(null);	// Page fault is over, so validting thread becomes null
 		page.notifyThreads(); // Notify threads waiting on the page
 		pfEvent.notifyThreads(); // Notify the thread that caused the pagefault
+		if (!huge)
+			Prefetcher.faulted(page); // Queue pre-paging along a detected stride, done later by the daemon
+		PageOutDaemon.checkWatermark(); // Wake the page-out daemon if frames run low
 		ThreadCB.dispatch(); // Call dispatch
 		return SUCCESS;
 	}
@@ -198,122 +248,140 @@ public class PageFaultHandler extends IflPageFaultHandler {
 	/**
     	Returns the current number of free frames. It does not matter where the
 		search in the frame table starts, but this method must not change the value
-		of the reference bits, dirty bits or MMU.Cursor
+		of the reference bits, dirty bits or MMU.Cursor.
+		The count is kept by the free-frame list in FrameTableEntry, so this is O(1).
 	 */
 	// Author: Dareen Bukhari   - 1607281
 	//         Nada Abughazalah - 1606827
 	// Last Update: April 17, 2020
 	static int numFreeFrames() {
-		int freeFramesCount = 0;
-		for (int i=0; i<MMU.getFrameTableSize(); i++) {
-			if (!MMU.getFrame(i).isReserved() //If frame not reserved
-					&& MMU.getFrame(i).getPage()==null //and page is null
-					&& MMU.getFrame(i).getLockCount()==0 //and frame not locked,
-					&& !MMU.getFrame(i).isReferenced() //not referenced, 
-					&& !MMU.getFrame(i).isDirty()) //and not dirty
-				freeFramesCount++;
-		}
-		return freeFramesCount;
+		return FrameTableEntry.getFreeCount();
 	}
 
 	/**
-	Returns the first free frame starting the search from frame[0]
+	Returns a free frame taken from the head of the free-frame list,
+	or null if there is none
 	 */
 	// Author: Dareen Bukhari   - 1607281
 	//         Nada Abughazalah - 1606827
 	// Last Update: April 17, 2020
-	static FrameTableEntry getFreeFrame() { //this is what we used
-		//FrameTableEntry frame = null; // Create frame variable
-		for (int i=0; i<MMU.getFrameTableSize(); i++) { // Loop through the frame table
-			if(!MMU.getFrame(i).isReserved() //If frame not reserved
-					&& MMU.getFrame(i).getPage()==null //and page is null
-					&& MMU.getFrame(i).getLockCount()==0 //and frame not locked,
-					&& !MMU.getFrame(i).isReferenced() //not referenced, 
-					&& !MMU.getFrame(i).isDirty()) { //and not dirty
-				return MMU.getFrame(i); // Retrieve this frame
-			}
-		}
-		return null;
+	static FrameTableEntry getFreeFrame() {
+		return FrameTableEntry.getFirstFree();
 	}
 
 	/**
-    Frees frames using the following Second Chance approach
-    and returns one frame. The search uses the MMU variable MMU.Cursor to
-    specify the starting frame index of the search.	
+	Returns true if page is on standby in a free frame, so a pagefault
+	on it can be served without a swap in
 	 */
-	// Author: Dareen Bukhari   - 1607281
-	//         Nada Abughazalah - 1606827
-	// Last Update: April 18, 2020
-	static FrameTableEntry SecondChance() {
-
-		boolean i = true;
-		int counter = 0;
-		int frameID = 0;
-		boolean frameIDFlag = false;
-		///Phase I
-		while(i) { 
-
-			if (numFreeFrames() == MMU.wantFree) //If free frames equals wantFree
-				return getFreeFrame();
-
-			if(MMU.getFrame(MMU.Cursor).isReferenced() == true) //Frame is not referenced
-				MMU.getFrame(MMU.Cursor).setReferenced(false); //Set its reference bit to 0
-
-			// Checking for a clean page
-			else if (MMU.getFrame(MMU.Cursor).getPage() != null // Page not null
-					&& !MMU.getFrame(MMU.Cursor).isReferenced()  // Not referenced
-					&& MMU.getFrame(MMU.Cursor).getLockCount()==0 // Not locked
-					&& !MMU.getFrame(MMU.Cursor).isReserved() // Not reserved
-					&& !MMU.getFrame(MMU.Cursor).isDirty()) { // Not dirty 
-
-				// Freeing frames until it equals wantFree
-				PageTableEntry p = MMU.getFrame(MMU.Cursor).getPage(); // Save frame's page
-				MMU.getFrame(MMU.Cursor).setPage(null); // Set page to null
-				MMU.getFrame(MMU.Cursor).setDirty(false); // Dirty bit = 0
-				MMU.getFrame(MMU.Cursor).setReferenced(false); // Referenced bit = 0
-				// Updating on page table: page becomes invalid and frame null
-				p.setValid(false);
-				p.setFrame(null);
-			}
-
-			// Get the ID of the first dirty frame if there aren't enough clean frames
-			if (MMU.getFrame(MMU.Cursor).getLockCount()==0 
-					&& !MMU.getFrame(MMU.Cursor).isReserved()
-					&& MMU.getFrame(MMU.Cursor).isDirty()
-					&& !frameIDFlag) {
-				frameID = MMU.getFrame(MMU.Cursor).getID();
-				frameIDFlag = true;
-			}
-
-			MMU.Cursor = (MMU.Cursor + 1) % MMU.getFrameTableSize(); // Increment the cursor
+	static boolean onStandby(PageTableEntry page) {
+		return page.standbyFrame != null && page.standbyFrame.standbyPage == page
+				&& page.standbyFrame.isFree();
+	}
 
-			counter++; // Increment the counter
-			if(counter == (MMU.getFrameTableSize()*2)) // If we have cycled through the whole frame
-				i = false; //Exit the while loop
-		} // End while(i) 
+	/**
+    Associates a swapped in page with its frame: the page becomes valid,
+    the frame joins the task's resident set and the replacement policy
+    is told. Reference and dirty bits are left to the caller.
+	 */
+	static void map(FrameTableEntry frame, PageTableEntry page) {
+		page.setValid(true); // Set valid bit to 1
+		frame.setPage(page); // Set the frame's page to the new page
+		page.getTask().getPageTable().residentFrames.add(frame); // Frame now belongs to the task
+		MMU.replacementPolicy.pageIn(frame); // Tell the replacement policy
+	}
 
-		///Phase II - iterated through the frame table and exited
-		if (frameIDFlag==true && numFreeFrames() < MMU.wantFree) 
-			return MMU.getFrame(frameID); // Return first dirty frame
+	/**
+    Disassociates the page held by the frame from it: the page becomes
+    invalid and the frame is left clean and unreferenced. Does not write
+    the page out; a dirty frame must be swapped out first.
+    The page stays on standby in the frame until the frame is reserved
+    again, so a pagefault on it before then needs no swap in.
+    Every page mapping a shared frame is invalidated, and a huge page is
+    split.
+	 */
+	static void evict(FrameTableEntry frame) {
+		if (frame.getPage().huge) // Replacement works on base pages
+			HugePages.split(frame.getPage());
+
+		boolean shared = frame.isShared();
+		if (shared) { // Other pages merged into the frame go too
+			for (PageTableEntry s : frame.sharers) {
+				s.setValid(false);
+				s.setFrame(null);
+				s.getTask().getPageTable().residentFrames.remove(frame);
+				MMU.tlb.invalidate(s);
+				MMU.replacementPolicy.pageOut(frame, s); // Each sharer leaves the policy's lists
+				Prefetcher.evicted(s);
+			}
+			frame.sharers = null;
+		}
 
-		else //If no. of free frames not equal to wantFree
-			return getFreeFrame();	
+		PageTableEntry p = frame.getPage(); // Save frame's page
+		frame.setPage(null); // Set page to null
+		frame.setDirty(false); // Dirty bit = 0
+		frame.setReferenced(false); // Referenced bit = 0
+		// Updating on page table: page becomes invalid and frame null
+		p.setValid(false);
+		p.setFrame(null);
+		if (!frame.isReserved() && !shared) { // Contents stay in the frame until it is reused
+			p.standbyFrame = frame;
+			frame.standbyPage = p;
+			p.getTask().getPageTable().standbyFrames.add(frame);
+		}
+		p.getTask().getPageTable().residentFrames.remove(frame); // Frame no longer belongs to the task
+		MMU.tlb.invalidate(p); // Drop the cached translation
+		MMU.replacementPolicy.pageOut(frame, p); // Tell the replacement policy
+		Prefetcher.evicted(p); // Shrinks the prefetch window if p was never used
+		frame.updateState(); // Frame may join the free-frame list
 	}
 
+	/**
+	Reads page from its task's swap file. A page that was never written
+	to the swap file has no copy there: with zero-fill on demand (the
+	osp.memory.zerofill property, on by default) its frame is treated as
+	zero-filled and no I/O is done. A page in the SwapCache is read from
+	there, also without I/O.
+	 */
 	// Author: Dareen Bukhari   - 1607281
 	//         Nada Abughazalah - 1606827
 	// Last Update: April 17, 2020
 	public static void swapIn(ThreadCB thread, PageTableEntry page) {
+		if (zeroFill && !page.backed) { // Nothing to read yet
+			MemoryStats.zeroFilled();
+			return;
+		}
+		if (SwapCache.load(page)) // Decompressed from memory
+			return;
+
+		SwapEvent event = new SwapEvent();
+		event.begin();
 		// Perform read operation of the file to get the page to be swapped in
 		page.getTask().getSwapFile().read(page.getID(), page, thread);
+		MemoryStats.swappedIn();
+		commit(event, false, page);
 	}
 
 	// Author: Dareen Bukhari   - 1607281
 	//         Nada Abughazalah - 1606827
 	// Last Update: April 17, 2020
 	public static void swapOut(ThreadCB thread, FrameTableEntry frame) {
+		SwapEvent event = new SwapEvent();
+		event.begin();
 		// Perform write operation of the file to write the frame to be swapped out
 		PageTableEntry p = frame.getPage();
 		p.getTask().getSwapFile().write(p.getID(), p, thread);    	
+		p.backed = true; // The swap file now holds a copy of the page
+		SwapCache.store(p); // and so does the swap cache
+		MemoryStats.swappedOut();
+		commit(event, true, p);
+	}
+
+	private static void commit(SwapEvent event, boolean out, PageTableEntry page) {
+		if (event.shouldCommit()) {
+			event.out = out;
+			event.task = page.getTask().getID();
+			event.page = page.getID();
+			event.commit();
+		}
 	}
 }
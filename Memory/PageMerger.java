@@ -0,0 +1,124 @@
+package osp.Memory;
+import java.util.*;
+
+/**
+   Page sharing across tasks (KSM-style). A background scanner merges
+   identical clean pages into one shared frame and frees the other
+   frames. A write to a shared page, or an I/O lock on it, breaks the
+   share (copy-on-write): the page is unmapped and faults back into a
+   private frame.
+
+   Page contents are not simulated, so the only pages known to be
+   identical are zero pages: pages that were never written to the swap
+   file and are not dirty, which zero-fill on demand filled with zeros.
+   They are merged into one shared zero frame, and copy-on-write is a
+   zero-fill pagefault.
+
+   The scanner examines osp.memory.merge.pages frames (default 0, off)
+   every time PageOutDaemon runs, so it needs osp.memory.pageout.period
+   too. It does nothing with osp.memory.zerofill=false.
+
+   @OSPProject Memory
+ */
+class PageMerger {
+
+	private static int scanPages; // Frames examined per pass, 0 if off
+	private static int hand; // Scanner's own cursor
+	private static FrameTableEntry zeroFrame; // Shared frame of the zero page, or null
+
+	private static long merged; // Pages merged into the zero frame
+	private static long broken; // Shares broken by a write or a lock
+
+	static void init() {
+		scanPages = Math.max(0, Integer.getInteger("osp.memory.merge.pages", 0));
+		hand = 0;
+		zeroFrame = null;
+		merged = 0;
+		broken = 0;
+	}
+
+	/**
+	Examines the next scanPages frames and merges the zero pages found
+	into the zero frame. The first zero page found becomes the zero frame
+	if there is none.
+	 */
+	static void scan() {
+		if (scanPages == 0 || !PageFaultHandler.zeroFill)
+			return;
+		if (zeroFrame != null && !holdsZeroPage(zeroFrame)) // Evicted, or written before it was shared
+			zeroFrame = null;
+
+		for (int counter=0; counter<scanPages; counter++) {
+			FrameTableEntry frame = MMU.getFrame(hand);
+			hand = (hand + 1) % MMU.getFrameTableSize(); // Advance the scanner's hand
+
+			if (frame == zeroFrame || !holdsZeroPage(frame))
+				continue;
+			if (zeroFrame == null)
+				zeroFrame = frame;
+			else
+				merge(frame);
+		}
+	}
+
+	/**
+	Returns true if frame holds a zero page that may be merged
+	 */
+	private static boolean holdsZeroPage(FrameTableEntry frame) {
+		PageTableEntry page = frame.getPage();
+		return page != null && page.isValid() && !page.backed && !page.huge
+				&& !frame.isDirty() && frame.getLockCount() == 0 && !frame.isReserved();
+	}
+
+	/**
+	Maps every page in frame to the zero frame instead, and frees frame
+	 */
+	private static void merge(FrameTableEntry frame) {
+		PageTableEntry page = frame.getPage();
+		ArrayList<PageTableEntry> pages = new ArrayList<PageTableEntry>();
+		pages.add(page);
+		if (frame.sharers != null) // An older shared frame
+			pages.addAll(frame.sharers);
+
+		if (!zeroFrame.isShared()) // Its own page was cached as writable
+			MMU.tlb.invalidate(zeroFrame.getPage());
+		for (PageTableEntry p : pages) {
+			p.setFrame(zeroFrame);
+			zeroFrame.addSharer(p);
+			MMU.tlb.invalidate(p); // Old translation points to frame
+			p.getTask().getPageTable().residentFrames.remove(frame);
+			p.getTask().getPageTable().residentFrames.add(zeroFrame);
+		}
+		merged += pages.size();
+
+		frame.sharers = null;
+		frame.setPage(null);
+		frame.clearReferenced();
+		MMU.replacementPolicy.pageOut(frame, null); // Frame is no longer in use, but its pages stay resident
+		frame.updateState(); // Frame joins the free-frame list
+	}
+
+	/**
+	Breaks the share of page before a write or a lock: page leaves its
+	shared frame and becomes invalid, so the reference faults it into a
+	private frame.
+	 */
+	static void unshare(PageTableEntry page) {
+		FrameTableEntry frame = page.getFrame();
+		frame.removeSharer(page);
+		page.setValid(false);
+		page.setFrame(null);
+		if (!frame.isMappedBy(page.getTask())) // No other page of the task uses the frame
+			page.getTask().getPageTable().residentFrames.remove(frame);
+		MMU.tlb.invalidate(page);
+		broken++;
+	}
+
+	static long getMerged() {
+		return merged;
+	}
+
+	static long getBroken() {
+		return broken;
+	}
+}
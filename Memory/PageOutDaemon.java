@@ -0,0 +1,183 @@
+package osp.Memory;
+import java.util.*;
+import osp.Threads.*;
+import osp.Hardware.*;
+
+/**
+   The page-out daemon writes dirty frames back to the swap file ahead
+   of time and frees clean, unreferenced frames, so that MMU.wantFree
+   clean free frames are available when a pagefault happens. A fault
+   can then swap its page in without first swapping a victim out.
+
+   The daemon runs from the timer interrupt every osp.memory.pageout.period
+   ticks. When a pagefault leaves fewer than osp.memory.pageout.lowwater
+   free frames it is due on the next tick. The daemon only keeps the time
+   it is due; ThreadCB.do_dispatch() sets the timer for the earlier of
+   that time and the end of the running thread's quantum. OSP has no kernel
+   threads, so the write-backs are done on behalf of the thread that was
+   running when the timer went off. A period of 0 (the default) turns the
+   write-backs off.
+
+   The daemon also does the Prefetcher's swap ins, and the write-backs of
+   tasks the load controller swaps out (PageTable.releaseFrames()): both
+   make it due on the next tick, whatever the period.
+
+   @OSPProject Memory
+ */
+public class PageOutDaemon {
+
+	private static int period; // Timer period in ticks, 0 if off
+	private static int lowWater; // Free frame count that wakes the daemon early
+	private static int hand; // Daemon's own cursor, so MMU.Cursor is left to the policy
+	private static boolean running; // Set while the daemon waits for a swap out
+	private static long deadline; // Time of the next run, 0 if none is due
+	private static ArrayDeque<PageTable> releasing; // Swapped out tasks with dirty frames left
+
+	/**
+	Reads the daemon parameters. Called by MMU.init().
+	 */
+	static void init() {
+		period = Integer.getInteger("osp.memory.pageout.period", 0);
+		lowWater = Integer.getInteger("osp.memory.pageout.lowwater", MMU.wantFree);
+		hand = 0;
+		running = false;
+		deadline = 0;
+		releasing = new ArrayDeque<PageTable>();
+	}
+
+	/**
+	Called on every dispatch. Schedules the next run of the daemon, one
+	period from now, if none is due yet.
+	 */
+	public static void armTimer() {
+		if (period > 0 && deadline == 0)
+			deadline = HClock.get() + period;
+	}
+
+	/**
+	Returns the time the daemon is due to run next, or 0 if none
+	 */
+	public static long getDeadline() {
+		return deadline;
+	}
+
+	/**
+	Called at the end of a pagefault, before dispatch() sets the timer.
+	Makes the daemon due on the next tick if the number of free frames
+	dropped below the low watermark.
+	 */
+	static void checkWatermark() {
+		if (period > 0 && !running && PageFaultHandler.numFreeFrames() < lowWater)
+			deadline = HClock.get() + 1;
+	}
+
+	/**
+	Queues the dirty frames of pageTable, whose task is swapped out, to be
+	written back and evicted on the next tick
+	 */
+	static void release(PageTable pageTable) {
+		if (!releasing.contains(pageTable))
+			releasing.add(pageTable);
+		wake();
+	}
+
+	/**
+	Makes the daemon due on the next tick, for queued prefetches or
+	swapped out tasks
+	 */
+	static void wake() {
+		if (deadline == 0 || deadline > HClock.get() + 1) // Also while running, so work queued meanwhile is not lost
+			deadline = HClock.get() + 1;
+	}
+
+	/**
+	Called from the timer interrupt. Swaps in the queued prefetches and
+	releases the frames of swapped out tasks, then makes one pass over
+	the frame table, cleaning dirty frames and freeing
+	clean ones, until MMU.wantFree frames are free, and schedules the next
+	run. PageMerger scans first. Does nothing if the daemon is not due,
+	because the timer went off for the end of a quantum.
+
+	@param thread the thread the swap ins and outs are done for, may be null
+	 */
+	public static void run(ThreadCB thread) {
+		if (running || deadline == 0 || HClock.get() < deadline)
+			return;
+		deadline = 0;
+		armTimer(); // Next run
+		PageMerger.scan(); // Merging needs no I/O, so it runs even when idle
+		if (thread == null) // CPU is idle, nobody to do the I/O for; prefetches wait for the next fault
+			return;
+		running = true;
+		if (!Prefetcher.run(thread) || !releaseTasks(thread) || period == 0) { // Thread got killed, or no write-backs
+			running = false;
+			return;
+		}
+
+		for (int counter=0; counter<MMU.getFrameTableSize() && PageFaultHandler.numFreeFrames() < MMU.wantFree; counter++) {
+			FrameTableEntry frame = MMU.getFrame(hand);
+			hand = (hand + 1) % MMU.getFrameTableSize(); // Advance the daemon's hand
+
+			if (frame.getPage() == null || frame.getLockCount() > 0
+					|| frame.isReserved() || frame.isReferenced()) // In use, leave it alone
+				continue;
+
+			if (frame.isDirty() && !clean(thread, frame)) // Thread got killed
+				break;
+
+			if (frame.getPage() != null && !frame.isDirty() && !frame.isReferenced()
+					&& frame.getLockCount() == 0 && !frame.isReserved())
+				PageFaultHandler.evict(frame); // Clean and still unused: free it
+		}
+
+		running = false;
+	}
+
+	/**
+	Writes back and evicts the dirty frames of the queued swapped out
+	tasks. A frame referenced since the task was swapped out is in use
+	again (the task was brought back) and is left alone.
+
+	@return false if the thread got killed waiting for a swap out
+	 */
+	private static boolean releaseTasks(ThreadCB thread) {
+		while (!releasing.isEmpty()) {
+			PageTable pageTable = releasing.peek();
+			if (PageTable.tables.contains(pageTable)) { // Task is still there
+				for (FrameTableEntry frame : new ArrayList<FrameTableEntry>(pageTable.residentFrames)) {
+					if (frame.getPage() == null || frame.getLockCount() > 0
+							|| frame.isReserved() || frame.isReferenced())
+						continue;
+					if (frame.isDirty() && !clean(thread, frame)) // Thread got killed, the task stays queued
+						return false;
+					if (frame.getPage() != null && !frame.isDirty() && !frame.isReferenced()
+							&& frame.getLockCount() == 0 && !frame.isReserved())
+						PageFaultHandler.evict(frame);
+				}
+			}
+			releasing.poll();
+		}
+		return true;
+	}
+
+	/**
+	Writes a dirty frame back to the swap file. The dirty bit is cleared
+	before the write, so a write to the page during the swap out leaves
+	the frame dirty again.
+
+	@return false if the thread got killed waiting for the swap out
+	 */
+	private static boolean clean(ThreadCB thread, FrameTableEntry frame) {
+		PageTableEntry page = frame.getPage();
+		frame.setDirty(false);
+		frame.reserve(thread.getTask()); // Nobody may replace the frame during the write
+
+		SwapCluster.write(thread, frame); // Dirty neighbours are cleaned too
+
+		boolean killed = thread.getStatus() == ThreadCB.ThreadKill;
+		if (killed && frame.getPage() == page) // Write did not complete
+			frame.setDirty(true);
+		frame.unreserve(thread.getTask());
+		return !killed;
+	}
+}
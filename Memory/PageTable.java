@@ -1,5 +1,5 @@
 package osp.Memory;
-import java.lang.Math;
+import java.util.*;
 import osp.Tasks.*;
 import osp.Utilities.*;
 import osp.IFLModules.*;
@@ -15,6 +15,32 @@ page table is of the non-inverted type.
 
 public class PageTable extends IflPageTable
 {
+	// Frames holding pages of this task, kept up to date on swap in and eviction
+	LinkedHashSet<FrameTableEntry> residentFrames = new LinkedHashSet<FrameTableEntry>();
+	// Frames reserved by this task
+	LinkedHashSet<FrameTableEntry> reservedFrames = new LinkedHashSet<FrameTableEntry>();
+	// Free frames holding pages of this task on standby
+	LinkedHashSet<FrameTableEntry> standbyFrames = new LinkedHashSet<FrameTableEntry>();
+
+	// Fault pattern of this task, used by the Prefetcher
+	int lastFaultPage = -1;
+	int faultStride;
+	int prefetchWindow = 1;
+
+	// Frame quota of this task under page-fault frequency allocation
+	int frameQuota;
+	long lastFaultTime;
+
+	// Locks held on this task's pages, charged to LockBudget
+	int lockCharge;
+
+	// Page tables of the tasks that hold memory, for Checkpoint
+	static LinkedHashSet<PageTable> tables = new LinkedHashSet<PageTable>();
+
+	// Sequential fault detection of HugePages
+	int nextSequential = -1;
+	int sequentialFaults;
+
 	/**
 	   The page table constructor. Must call
 
@@ -38,28 +64,93 @@ public class PageTable extends IflPageTable
 		pages = new PageTableEntry[pageTableSize]; // Create page table (pages is of type PageTable)
 		for (int i=0; i<pageTableSize; i++) // Populate pages with PageTableEntry items
 			pages[i] = new PageTableEntry(this, i); // Each entry is initialized with this PT and its number is i
+		tables.add(this);
+	}
+
+	/**
+	   Returns the number of frames holding pages of this task
+	 */
+	public int getResidentCount() {
+		return residentFrames.size();
+	}
+
+	/**
+	   Returns the frames holding pages of this task. The set must not
+	   be changed by the caller.
+	 */
+	public Set<FrameTableEntry> getResidentFrames() {
+		return Collections.unmodifiableSet(residentFrames);
+	}
+
+	/**
+	   Releases the task's frames when the load controller swaps the task
+	   out. Clean frames that are neither locked nor reserved are evicted
+	   now (their pages stay on standby until the frames are reused).
+	   Dirty frames lose their reference bit and are handed to the
+	   PageOutDaemon, which writes them back on the next tick and then
+	   evicts them. The load controller runs from dispatch, when there is
+	   no thread to do the swap outs for.
+
+	   @return the number of frames evicted now
+	 */
+	public int releaseFrames() {
+		int released = 0;
+		boolean dirty = false;
+		for (FrameTableEntry frame : new ArrayList<FrameTableEntry>(residentFrames)) {
+			if (frame.getLockCount() > 0 || frame.isReserved())
+				continue;
+			frame.clearReferenced();
+			if (frame.isDirty())
+				dirty = true;
+			else {
+				PageFaultHandler.evict(frame);
+				released++;
+			}
+		}
+		if (dirty)
+			PageOutDaemon.release(this);
+		return released;
 	}
 
 	/**
        Frees up main memory occupied by the task.
        Then unreserves the freed pages, if necessary.
 
+       Only the frames in the task's resident, reserved and standby sets
+       are visited, not the whole frame table. Shared frames that other
+       tasks still map are left to them.
+
        @OSPProject Memory
 	 */  
 	// Author: Nada Abughazalah - 1606827
 	// Last Update: April 8, 2020
 	public void do_deallocateMemory() {
-		for (int i=0; i<MMU.getFrameTableSize(); i++) {
-			if(MMU.getFrame(i).getPage() != null ) {
-				if (getTask() == MMU.getFrame(i).getPage().getTask()) { //NOT SURE ABOUT THIS
-					MMU.getFrame(i).setPage(null); // Make the 'page' that points to the page occupying the frame null
-					MMU.getFrame(i).setDirty(false); // Clear the  dirty bit 
-					MMU.getFrame(i).setReferenced(false); // Clear the reference bit	
-				} 
-				if (MMU.getFrame(i).getReserved() == getTask()) // If frame is reserved by task
-					MMU.getFrame(i).setUnreserved(getTask()); // Un-reserve frame
-			}
+		MMU.tlb.flush(this); // Translations of this task are about to go stale
+
+		for (FrameTableEntry frame : residentFrames) {
+			if (frame.isShared() && frame.detach(getTask())) // Other tasks still map the frame
+				continue;
+			PageTableEntry page = frame.getPage();
+			frame.setPage(null); // Make the 'page' that points to the page occupying the frame null
+			if (page != null)
+				MMU.replacementPolicy.pageOut(frame, page); // Tell the replacement policy
+			frame.setDirty(false); // Clear the  dirty bit 
+			frame.clearReferenced(); // Clear the reference bit	
+			frame.updateState(); // Keep the free-frame list in sync
 		}
+		residentFrames.clear();
+
+		for (FrameTableEntry frame : new ArrayList<FrameTableEntry>(reservedFrames))
+			frame.unreserve(getTask()); // Un-reserve frames reserved by task
+
+		for (FrameTableEntry frame : standbyFrames) { // Standby pages can never fault back in
+			frame.standbyPage.standbyFrame = null;
+			frame.standbyPage = null;
+		}
+		standbyFrames.clear();
+
+		SwapCache.release(getTask()); // Cached copies of the task's pages are no longer needed
+		LockBudget.releaseTask(this); // and so are its lock charges
+		tables.remove(this);
 	}
 }
-
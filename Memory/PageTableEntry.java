@@ -15,6 +15,22 @@ page in memory, including the page frame in which it resides.
 
 public class PageTableEntry extends IflPageTableEntry {
 
+	// Set while the page is resident because of pre-paging and not yet referenced
+	boolean prefetched;
+
+	// Free frame still holding the contents of this evicted page, or null
+	FrameTableEntry standbyFrame;
+
+	// Set once the page has been written to the swap file. Until then the
+	// swap file holds nothing for it and a pagefault zero-fills a frame.
+	boolean backed;
+
+	// Charged LockBudget locks held on the page
+	int lockCharge;
+
+	// Set while the page is part of a huge page (HugePages)
+	boolean huge;
+
 	/**
        The constructor. Must call
 
@@ -51,26 +67,40 @@ public class PageTableEntry extends IflPageTableEntry {
 	//         Nada Abughazalah - 1606827
 	// Last Update: April 13, 2020 
 	public int do_lock(IORB iorb) {
+		boolean charged = !LockBudget.isSwapIO(this, iorb); // Swap I/O of a pagefault is never held back
+		if (charged && !LockBudget.acquire(this, iorb.getThread())) // Waits while the lock budget is used up
+			return FAILURE;
+		if (isValid() && getFrame().isShared()) // The I/O may write into the page
+			PageMerger.unshare(this); // Copy-on-write: fault into a private frame
 		// Check if the page is in main memory by checking the validity of the page
 		if (this.isValid() == false) { // Initiate page fault
 		
 			if (getValidatingThread() == null) { // Page not involved in page fault
 				PageFaultHandler.handlePageFault(iorb.getThread(), MemoryLock, this); // Page fault caused by locking
 				
-				if(iorb.getThread().getStatus() == ThreadKill) // If thread got killed waiting
+				if(iorb.getThread().getStatus() == ThreadKill) { // If thread got killed waiting
+					if (charged)
+						LockBudget.cancel(this); // Lock was never taken
 					return FAILURE;
+				}
 			}
 			else if (getValidatingThread() != iorb.getThread()) {  // NThread2 of same task, if Th2<>Th1 
 				// Thread that created iorb killed while waiting for lock to complete
 				iorb.getThread().suspend(this); // Suspend the thread until page (ie, this) becomes valid		
 				// If page is still invalid			
-				if(this.isValid() == false) 
+				if(this.isValid() == false) {
+					if (charged)
+						LockBudget.cancel(this); // Lock was never taken
 					return FAILURE;
+				}
 			}
 		}
 		
 		// If page was locked successfully or if Th2=Th1
 		getFrame().incrementLockCount();
+		getFrame().updateState(); // A locked frame is never free
+		if (charged)
+			LockBudget.taken(this);
 		return SUCCESS; 
 	}
 
@@ -90,6 +120,8 @@ public class PageTableEntry extends IflPageTableEntry {
 
 		if(this.getFrame().getLockCount() > 0) { // Ensure the lock count not negative
 			this.getFrame().decrementLockCount(); // Decrement the lock count
+			this.getFrame().updateState(); // Frame may have become free
+			LockBudget.unlock(this); // Returns the charge of a user lock, letting a waiting lock go ahead
 		}
 
 	}
@@ -0,0 +1,142 @@
+package osp.Memory;
+import java.util.*;
+import osp.Threads.*;
+
+/**
+   Sequential and strided pre-paging. The page fault handler reports
+   every demand fault to faulted(). When two consecutive faults of a task
+   are the same distance (stride) apart, the next pages along the stride
+   are queued and brought in later, into free frames only.
+
+   The swap ins are not done by the pagefault, which would keep the
+   faulting thread waiting for the whole window. faulted() makes the
+   PageOutDaemon due on the next tick instead, and the daemon calls
+   run() on behalf of the thread running then, like its write-backs.
+
+   The number of pages brought in, the window, is kept per task. It is
+   doubled, up to osp.memory.prefetch.max pages, when a prefetched page is
+   used, and halved when a prefetched page is evicted without having been
+   used. A maximum window of 0 turns pre-paging off.
+
+   @OSPProject Memory
+ */
+class Prefetcher {
+
+	private static int maxWindow;
+	private static ArrayDeque<PageTableEntry> pending; // Pages to swap in on the next run()
+
+	static void init() {
+		maxWindow = Integer.getInteger("osp.memory.prefetch.max", 4);
+		pending = new ArrayDeque<PageTableEntry>();
+	}
+
+	/**
+	Records a demand fault on page and, if the task faults along a
+	stride, queues the next pages of the stride. Called after the
+	faulting thread has been released.
+	 */
+	static void faulted(PageTableEntry page) {
+		if (maxWindow == 0)
+			return;
+
+		PageTable pageTable = page.getTask().getPageTable();
+		int stride = page.getID() - pageTable.lastFaultPage;
+		boolean sequential = stride != 0 && stride == pageTable.faultStride;
+		pageTable.faultStride = stride;
+		pageTable.lastFaultPage = page.getID();
+		if (!sequential)
+			return;
+
+		int next = page.getID();
+		for (int i=0; i<pageTable.prefetchWindow; i++) {
+			next += stride;
+			if (next < 0 || next >= pageTable.pages.length) // Ran off the address space
+				break;
+			if (pending.size() >= MMU.getFrameTableSize()) // More than memory could hold
+				break;
+			pending.add(pageTable.pages[next]);
+		}
+		if (!pending.isEmpty())
+			PageOutDaemon.wake();
+	}
+
+	/**
+	Swaps in the queued pages that are still wanted, while more than
+	MMU.wantFree frames are free. Called by the PageOutDaemon.
+
+	@param thread the thread the swap ins are done for
+	@return false if the thread got killed waiting for a swap in
+	 */
+	static boolean run(ThreadCB thread) {
+		while (!pending.isEmpty()) {
+			if (PageFaultHandler.numFreeFrames() <= MMU.wantFree) { // Never take the reserve of free frames
+				pending.clear();
+				return true;
+			}
+			PageTableEntry p = pending.poll();
+			if (!PageTable.tables.contains(p.getTask().getPageTable())) // Task is gone
+				continue;
+			if (p.isValid() || p.getValidatingThread() != null || PageFaultHandler.onStandby(p)) // Already in, or on its way
+				continue;
+			if (!prefetch(thread, p)) {
+				pending.clear();
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	Swaps page into a free frame without referencing it. The frame is
+	reserved for the thread's task, which may not be the page's task.
+
+	@return false if the thread got killed waiting for the swap in
+	 */
+	private static boolean prefetch(ThreadCB thread, PageTableEntry page) {
+		FrameTableEntry frame = PageFaultHandler.getFreeFrame();
+		page.setValidatingThread(thread); // Threads touching the page meanwhile wait for it
+		frame.reserve(thread.getTask());
+		page.setFrame(frame);
+
+		PageFaultHandler.swapIn(thread, page);
+
+		boolean killed = thread.getStatus() == ThreadCB.ThreadKill;
+		if (killed || !PageTable.tables.contains(page.getTask().getPageTable())) { // Nobody wants the page now
+			frame.unreserve(thread.getTask());
+			page.setFrame(null);
+			page.setValidatingThread(null);
+			page.notifyThreads();
+			return !killed;
+		}
+
+		PageFaultHandler.map(frame, page);
+		frame.setReferenced(false); // Not used yet
+		frame.setDirty(false);
+		page.prefetched = true;
+		frame.unreserve(thread.getTask());
+		page.setValidatingThread(null);
+		page.notifyThreads();
+		return true;
+	}
+
+	/**
+	Called by MMU.do_refer() on the first reference to a prefetched page
+	 */
+	static void used(PageTableEntry page) {
+		page.prefetched = false;
+		PageTable pageTable = page.getTask().getPageTable();
+		pageTable.prefetchWindow = Math.min(maxWindow, pageTable.prefetchWindow * 2);
+	}
+
+	/**
+	Called when a page is evicted. Shrinks the window if the page was
+	prefetched and never used.
+	 */
+	static void evicted(PageTableEntry page) {
+		if (!page.prefetched)
+			return;
+		page.prefetched = false;
+		PageTable pageTable = page.getTask().getPageTable();
+		pageTable.prefetchWindow = Math.max(1, pageTable.prefetchWindow / 2);
+	}
+}
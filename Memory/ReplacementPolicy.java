@@ -0,0 +1,48 @@
+package osp.Memory;
+
+/**
+   A page replacement policy. The policy used by the page fault handler
+   is chosen once in MMU.init() and stored in MMU.replacementPolicy.
+
+   The page fault handler calls selectVictim() when there is no free frame,
+   pageIn() after a page has been brought into a frame and pageOut() after
+   a page has been removed from its frame. MMU.do_refer() calls reference()
+   on every memory reference to a valid page.
+
+   @OSPProject Memory
+ */
+interface ReplacementPolicy {
+
+	/**
+	Returns the name of the policy as used in the osp.memory.replacement property
+	 */
+	String getName();
+
+	/**
+	Returns a frame for the faulting page: either a free frame, or a frame
+	that is neither locked nor reserved whose page is to be replaced.
+	Returns null if no such frame exists.
+
+	@param page the page that caused the pagefault
+	 */
+	FrameTableEntry selectVictim(PageTableEntry page);
+
+	/**
+	Called after frame.getPage() has been brought into the frame
+	 */
+	void pageIn(FrameTableEntry frame);
+
+	/**
+	Called after page has been removed from frame. page is null when the
+	frame is freed but its page stays resident in another frame, as when
+	PageMerger merges it into the zero frame.
+	 */
+	void pageOut(FrameTableEntry frame, PageTableEntry page);
+
+	/**
+	Called by MMU.do_refer() on every reference to a valid page
+
+	@param referenceType MemoryRead, MemoryWrite or MemoryLock
+	 */
+	void reference(FrameTableEntry frame, int referenceType);
+}
@@ -0,0 +1,109 @@
+package osp.Memory;
+import java.util.*;
+import osp.Tasks.*;
+
+/**
+   Compressed swap cache in front of the swap files (zswap-style). Every
+   page written to a swap file is also kept here, compressed, and a
+   pagefault on a cached page is served from memory without a swap in.
+   The least recently used pages are dropped when the cache is full.
+
+   The cache is write-through: OpenFile.write() goes through an IORB
+   that locks the page's frame, so a page that is no longer resident
+   cannot be written back from the cache later. Swap outs therefore
+   still reach the swap file, and dropping a page from the cache loses
+   nothing.
+
+   The budget is osp.memory.swapcache.frames frames of memory (default
+   0, off), at most half the frame table. Those frames are taken out of
+   the frame table at init: the last frames are held by the cache, never
+   free and never replaced, so tasks get that much less memory and the
+   fault and I/O counts compare fairly with a run without the cache.
+   Page contents are not simulated, so every page is taken to compress
+   by osp.memory.swapcache.ratio (default 3), and the cache holds
+   frames * ratio pages.
+
+   @OSPProject Memory
+ */
+class SwapCache {
+
+	private static int capacity; // Pages the budget can hold
+	// Cached pages, least recently used first
+	private static LinkedHashMap<PageTableEntry, Boolean> pages;
+
+	private static long hits;
+	private static long drops; // Pages dropped to make room
+
+	static void init() {
+		int frames = Math.max(0, Integer.getInteger("osp.memory.swapcache.frames", 0));
+		frames = Math.min(frames, MMU.getFrameTableSize() / 2); // Leave tasks most of memory
+		int ratio = Math.max(1, Integer.getInteger("osp.memory.swapcache.ratio", 3));
+		capacity = frames * ratio;
+		for (int i=MMU.getFrameTableSize() - frames; i<MMU.getFrameTableSize(); i++) { // The cache's own memory
+			FrameTableEntry frame = MMU.getFrame(i);
+			frame.heldBySwapCache = true;
+			frame.updateState(); // Leaves the free-frame list for good
+		}
+		pages = new LinkedHashMap<PageTableEntry, Boolean>(16, 0.75f, true); // Access order
+		hits = 0;
+		drops = 0;
+	}
+
+	static boolean isEnabled() {
+		return capacity > 0;
+	}
+
+	/**
+	Keeps a copy of page, just written to the swap file, replacing any
+	older copy. Drops the least recently used pages if the cache is full.
+	 */
+	static void store(PageTableEntry page) {
+		if (!isEnabled())
+			return;
+
+		pages.put(page, Boolean.TRUE); // Becomes the most recently used
+		Iterator<PageTableEntry> it = pages.keySet().iterator();
+		while (pages.size() > capacity) { // The swap file still has these
+			it.next();
+			it.remove();
+			drops++;
+		}
+	}
+
+	/**
+	Returns true if page can be read from the cache instead of the swap
+	file. The copy stays cached, since the swap file and the cache hold
+	the same contents until the page is written out again.
+	 */
+	static boolean load(PageTableEntry page) {
+		if (!isEnabled() || pages.get(page) == null) // get() also refreshes the page
+			return false;
+		hits++;
+		return true;
+	}
+
+	/**
+	Drops the cached pages of task, which is going away
+	 */
+	static void release(TaskCB task) {
+		if (!isEnabled())
+			return;
+
+		Iterator<PageTableEntry> it = pages.keySet().iterator();
+		while (it.hasNext())
+			if (it.next().getTask() == task)
+				it.remove();
+	}
+
+	static int size() {
+		return pages == null ? 0 : pages.size();
+	}
+
+	static long getHits() {
+		return hits;
+	}
+
+	static long getDrops() {
+		return drops;
+	}
+}
@@ -0,0 +1,100 @@
+package osp.Memory;
+import osp.Threads.*;
+
+/**
+   Clustered write-back. When the PageOutDaemon writes a dirty frame to the
+   swap file, the dirty neighbouring pages of the same task are written with it,
+   as one run of consecutive swap file blocks in ascending order. The
+   neighbours are then clean, so evicting them later needs no swap out, and
+   the swap device sees one sequential burst instead of scattered writes.
+
+   OpenFile.write() takes a single page, so a cluster is still one IORB per
+   page; the saving is in the later evictions and in seek distance. A
+   pagefault that has to swap a dirty victim out writes only the victim,
+   so it never waits for a whole cluster.
+
+   The largest cluster is osp.memory.cluster.size pages (default 4);
+   1 turns clustering off.
+
+   @OSPProject Memory
+ */
+class SwapCluster {
+
+	private static int maxSize;
+	private static long clusters; // Number of clusters written
+	private static long pagesWritten; // Number of pages written in clusters
+
+	static void init() {
+		maxSize = Math.max(1, Integer.getInteger("osp.memory.cluster.size", 4));
+		clusters = 0;
+		pagesWritten = 0;
+	}
+
+	/**
+	Writes the page in victim, and the dirty neighbouring pages of its
+	task, to the swap file. The caller has reserved victim and is
+	responsible for its dirty bit; the neighbours are left clean.
+
+	@return false if the thread got killed waiting for a swap out
+	 */
+	static boolean write(ThreadCB thread, FrameTableEntry victim) {
+		PageTableEntry page = victim.getPage();
+		PageTable pageTable = page.getTask().getPageTable();
+
+		// Grow the run of dirty pages around the victim, left then right
+		int first = page.getID();
+		int last = page.getID();
+		while (last - first + 1 < maxSize && canCluster(pageTable, first - 1))
+			first--;
+		while (last - first + 1 < maxSize && canCluster(pageTable, last + 1))
+			last++;
+
+		FrameTableEntry[] frames = new FrameTableEntry[last - first + 1]; // Frames of the neighbours, kept for unreserve()
+		for (int i=first; i<=last; i++) { // Neighbours are reserved and cleaned up front
+			if (i == page.getID())
+				continue;
+			FrameTableEntry frame = pageTable.pages[i].getFrame();
+			frames[i - first] = frame;
+			frame.setDirty(false); // A write during the swap out makes it dirty again
+			frame.reserve(thread.getTask());
+		}
+
+		boolean killed = false;
+		for (int i=first; i<=last; i++) {
+			PageTableEntry p = pageTable.pages[i];
+			FrameTableEntry frame = i == page.getID() ? victim : frames[i - first];
+			boolean mapped = frame.getPage() == p; // False if the task went away during an earlier write
+			if (mapped && !killed) {
+				PageFaultHandler.swapOut(thread, frame);
+				pagesWritten++;
+				killed = thread.getStatus() == ThreadCB.ThreadKill;
+			}
+			if (i != page.getID()) {
+				if (killed && mapped) // Write did not complete, or was never issued
+					frame.setDirty(true);
+				frame.unreserve(thread.getTask()); // Reserved above, whatever became of the page
+			}
+		}
+		clusters++;
+		return !killed;
+	}
+
+	/**
+	Returns true if page number i of pageTable is resident, dirty and
+	free to be written out with a cluster
+	 */
+	private static boolean canCluster(PageTable pageTable, int i) {
+		if (i < 0 || i >= pageTable.pages.length)
+			return false;
+		FrameTableEntry frame = pageTable.pages[i].getFrame();
+		return pageTable.pages[i].isValid() && frame != null && frame.isDirty()
+				&& frame.getLockCount() == 0 && !frame.isReserved();
+	}
+
+	/**
+	Returns the average number of pages written per cluster
+	 */
+	static double getAverageClusterSize() {
+		return clusters == 0 ? 0 : (double) pagesWritten / clusters;
+	}
+}
@@ -0,0 +1,22 @@
+package osp.Memory;
+import jdk.jfr.*;
+
+/**
+   JFR event committed by PageFaultHandler for every swap in and swap out
+
+   @OSPProject Memory
+ */
+@Name("osp.memory.Swap")
+@Label("Swap")
+@Category({"OSP", "Memory"})
+class SwapEvent extends Event {
+
+	@Label("Swap Out")
+	boolean out;
+
+	@Label("Task")
+	int task;
+
+	@Label("Page")
+	int page;
+}
@@ -0,0 +1,162 @@
+package osp.Memory;
+
+/**
+   A direct-mapped software TLB that caches page number to frame
+   translations of valid pages for the page table in the PTBR, with
+   whether the frame may be written. A hit gives MMU.do_refer() the
+   frame without reading the page table entry. OSP has a single CPU, so
+   there is one TLB, MMU.tlb.
+
+   The TLB must be flushed when the PTBR switches to another page table
+   and an entry must be invalidated when its page becomes invalid or
+   its frame becomes shared. Prefetched pages are only cached after
+   their first use, so a hit never needs Prefetcher.used().
+
+   Each slot has a second tag for huge pages (HugePages): one entry then
+   translates every page of the huge page.
+
+   @OSPProject Memory
+ */
+class TLB {
+
+	private int[] pageNumbers; // Tag of each slot, -1 if empty
+	private PageTableEntry[] entries; // Page of each slot, returned on a hit
+	private FrameTableEntry[] frames; // Cached translation of each slot
+	private boolean[] writable; // False if the frame is shared (copy-on-write)
+	private int[] hugeBases; // First page number of the huge page in each slot, -1 if empty
+	private int[] hugeFrames; // Frame ID of the first page of the huge page in each slot
+	private PageTableEntry hitPage; // Page of the last hit
+	private int mask; // Slot index mask, the size is a power of 2
+	private PageTable owner; // Page table the cached translations belong to
+
+	private long hits;
+	private long misses;
+
+	TLB(int size) {
+		int slots = 1;
+		while (slots < size) // Round the size up to a power of 2
+			slots <<= 1;
+		pageNumbers = new int[slots];
+		entries = new PageTableEntry[slots];
+		frames = new FrameTableEntry[slots];
+		writable = new boolean[slots];
+		hugeBases = new int[slots];
+		hugeFrames = new int[slots];
+		mask = slots - 1;
+		flush();
+	}
+
+	/**
+	Returns the cached frame of pageNumber of pageTable, or null on a
+	miss. A write to a shared frame is a miss, so that the page table
+	walk breaks the share. getHitPage() returns the page of a hit.
+	 */
+	FrameTableEntry lookup(PageTable pageTable, int pageNumber, boolean write) {
+		if (pageTable != owner) // Address space changed without a flush
+			switchTo(pageTable);
+
+		int slot = pageNumber & mask;
+		if (pageNumbers[slot] == pageNumber && (writable[slot] || !write)) {
+			hits++;
+			hitPage = entries[slot];
+			return frames[slot];
+		}
+		if (HugePages.size > 1) {
+			int base = pageNumber & -HugePages.size;
+			slot = (base >> HugePages.order) & mask;
+			if (hugeBases[slot] == base) { // Every page of a huge page is valid until it is split
+				hits++;
+				hitPage = pageTable.pages[pageNumber];
+				return MMU.getFrame(hugeFrames[slot] + pageNumber - base); // Frames of a huge page are contiguous
+			}
+		}
+		misses++;
+		return null;
+	}
+
+	PageTableEntry getHitPage() {
+		return hitPage;
+	}
+
+	/**
+	Caches the translation of a valid page, or of its whole huge page.
+	Pages of other page tables than the owner, and prefetched pages not
+	used yet, are ignored.
+	 */
+	void insert(PageTableEntry page) {
+		if (owner == null || page.getTask() != owner.getTask() || page.prefetched)
+			return;
+		FrameTableEntry frame = page.getFrame();
+		if (page.huge) {
+			int base = page.getID() & -HugePages.size;
+			int slot = (base >> HugePages.order) & mask;
+			hugeBases[slot] = base;
+			hugeFrames[slot] = frame.getID() - (page.getID() - base);
+			return;
+		}
+		int slot = page.getID() & mask;
+		pageNumbers[slot] = page.getID();
+		entries[slot] = page;
+		frames[slot] = frame;
+		writable[slot] = !frame.isShared();
+	}
+
+	/**
+	Drops the translation of page, if it is cached
+	 */
+	void invalidate(PageTableEntry page) {
+		int slot = page.getID() & mask;
+		if (entries[slot] == page) {
+			pageNumbers[slot] = -1;
+			entries[slot] = null;
+			frames[slot] = null;
+		}
+	}
+
+	/**
+	Drops the translation of the huge page starting at page number base
+	of pageTable, if it is cached
+	 */
+	void invalidateHuge(PageTable pageTable, int base) {
+		int slot = (base >> HugePages.order) & mask;
+		if (pageTable == owner && hugeBases[slot] == base)
+			hugeBases[slot] = -1;
+	}
+
+	/**
+	Flushes the TLB if pageTable is not the one it holds translations for
+	 */
+	void switchTo(PageTable pageTable) {
+		if (pageTable != owner) {
+			flush();
+			owner = pageTable;
+		}
+	}
+
+	/**
+	Flushes the TLB if it holds translations of pageTable
+	 */
+	void flush(PageTable pageTable) {
+		if (pageTable == owner)
+			flush();
+	}
+
+	void flush() {
+		for (int i=0; i<pageNumbers.length; i++) {
+			pageNumbers[i] = -1;
+			entries[i] = null;
+			frames[i] = null;
+			hugeBases[i] = -1;
+		}
+		owner = null;
+		hitPage = null;
+	}
+
+	long getHits() {
+		return hits;
+	}
+
+	long getMisses() {
+		return misses;
+	}
+}
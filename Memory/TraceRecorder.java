@@ -0,0 +1,109 @@
+package osp.Memory;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+/**
+   Records every memory reference made through MMU.do_refer() to a
+   memory-mapped trace file, for offline replay with TraceReplay.
+
+   The file starts with a 16-byte header: the magic number 0x4F535054
+   ("OSPT"), the format version and the number of records, kept current
+   after every record. Each record is 8 bytes: the task ID, then the page
+   number shifted left by one with the low bit set for a MemoryWrite.
+   All values are big-endian.
+
+   The file is mapped in segments of SEGMENT bytes, so recording costs a
+   couple of buffer puts per reference. Turned on by setting
+   osp.memory.trace to the path of the trace file.
+
+   @OSPProject Memory
+ */
+class TraceRecorder {
+
+	static final int MAGIC = 0x4F535054;
+	static final int VERSION = 1;
+	static final int HEADER = 16;
+	static final int RECORD = 8;
+	private static final long SEGMENT = 1L << 24; // Multiple of RECORD
+
+	private static FileChannel channel;
+	private static MappedByteBuffer header;
+	private static MappedByteBuffer segment;
+	private static long segmentStart; // File offset of segment
+	private static long records;
+
+	/**
+	Opens the trace file named by osp.memory.trace, if any
+	 */
+	static void init() {
+		close();
+		String path = System.getProperty("osp.memory.trace");
+		if (path == null)
+			return;
+
+		try {
+			channel = new RandomAccessFile(path, "rw").getChannel();
+			header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER);
+			header.putInt(0, MAGIC);
+			header.putInt(4, VERSION);
+			header.putLong(8, 0);
+			records = 0;
+			map(HEADER);
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				public void run() {
+					close();
+				}
+			});
+		}
+		catch (IOException e) {
+			System.err.println("Cannot open memory trace " + path + ": " + e);
+			channel = null;
+		}
+	}
+
+	static boolean isEnabled() {
+		return channel != null;
+	}
+
+	/**
+	Appends one reference to the trace
+	 */
+	static void record(int task, int page, boolean write) {
+		if (segment.remaining() < RECORD) {
+			try {
+				map(segmentStart + SEGMENT);
+			}
+			catch (IOException e) {
+				System.err.println("Memory trace stopped: " + e);
+				close();
+				return;
+			}
+		}
+		segment.putInt(task);
+		segment.putInt((page << 1) | (write ? 1 : 0));
+		header.putLong(8, ++records);
+	}
+
+	private static void map(long start) throws IOException {
+		segmentStart = start;
+		segment = channel.map(FileChannel.MapMode.READ_WRITE, start, SEGMENT);
+	}
+
+	/**
+	Forces the trace to disk and closes it
+	 */
+	static synchronized void close() {
+		if (channel == null)
+			return;
+		try {
+			header.force();
+			segment.force();
+			channel.close();
+		}
+		catch (IOException e) {
+			System.err.println("Cannot close memory trace: " + e);
+		}
+		channel = null;
+	}
+}
@@ -0,0 +1,404 @@
+package osp.Memory;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+   Offline replay of a reference trace written by TraceRecorder. Every
+   combination of replacement policy and frame table size is simulated
+   on its own core, and the number of faults and write-backs of each is
+   printed. No OSP simulation is needed:
+
+       java osp.Memory.TraceReplay trace.bin 16 32 64 128
+
+   The policies are ESC (textbook enhanced second chance over the four
+   reference/dirty classes), CLOCK, exact LRU, ARC and Belady's OPT.
+   Pages of different tasks are distinct.
+
+   @OSPProject Memory
+ */
+public class TraceReplay {
+
+	private long[] keys; // Task ID in the high word, page number in the low word
+	private boolean[] writes;
+	private int[] nextUse; // Index of the next reference to the same page, for OPT
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.err.println("usage: java osp.Memory.TraceReplay <trace> <frames>...");
+			System.exit(1);
+		}
+
+		TraceReplay replay = new TraceReplay(args[0]);
+		int[] sizes = new int[args.length - 1];
+		for (int i=1; i<args.length; i++) {
+			sizes[i-1] = Integer.parseInt(args[i]);
+			if (sizes[i-1] < 1) {
+				System.err.println("usage: java osp.Memory.TraceReplay <trace> <frames>...");
+				System.err.println("frames must be at least 1: " + args[i]);
+				System.exit(1);
+			}
+		}
+
+		System.out.println(replay.keys.length + " references");
+		System.out.printf("%-6s %8s %12s %12s%n", "policy", "frames", "faults", "writebacks");
+		for (Simulator s : replay.run(sizes))
+			System.out.printf("%-6s %8d %12d %12d%n", s.getName(), s.frames, s.faults, s.writeBacks);
+	}
+
+	/**
+	Loads a trace file into memory
+	 */
+	public TraceReplay(String path) throws IOException {
+		FileChannel channel = new RandomAccessFile(path, "r").getChannel();
+		try {
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, TraceRecorder.HEADER);
+			if (header.getInt(0) != TraceRecorder.MAGIC || header.getInt(4) != TraceRecorder.VERSION)
+				throw new IOException(path + " is not a memory trace");
+			long count = header.getLong(8);
+			if (count < 0 || count >= Integer.MAX_VALUE - 8) // Arrays are int indexed, MAX_VALUE marks no next use
+				throw new IOException(path + " has " + count + " references, too many to replay in memory");
+
+			keys = new long[(int) count];
+			writes = new boolean[(int) count];
+			long position = TraceRecorder.HEADER;
+			int i = 0;
+			while (i < count) { // Map at most 1 GB at a time
+				long length = Math.min((count - i) * TraceRecorder.RECORD, 1L << 30);
+				MappedByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+				while (records.hasRemaining()) {
+					long task = records.getInt();
+					int word = records.getInt();
+					keys[i] = (task << 32) | (word >>> 1);
+					writes[i] = (word & 1) != 0;
+					i++;
+				}
+				position += length;
+			}
+		}
+		finally {
+			channel.close();
+		}
+
+		nextUse = new int[keys.length];
+		HashMap<Long, Integer> seen = new HashMap<Long, Integer>();
+		for (int i=keys.length-1; i>=0; i--) { // Walk backwards to find the next use
+			Integer next = seen.put(keys[i], i);
+			nextUse[i] = next == null ? Integer.MAX_VALUE : next;
+		}
+	}
+
+	/**
+	Replays the trace through every policy for every frame table size,
+	in parallel, and returns the finished simulators
+	 */
+	public List<Simulator> run(int[] sizes) throws InterruptedException, ExecutionException {
+		ArrayList<Simulator> simulators = new ArrayList<Simulator>();
+		for (int frames : sizes) {
+			simulators.add(new Esc(frames));
+			simulators.add(new Clock(frames));
+			simulators.add(new Lru(frames));
+			simulators.add(new Arc(frames));
+			simulators.add(new Opt(frames));
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		try {
+			ArrayList<Future<?>> done = new ArrayList<Future<?>>();
+			for (final Simulator s : simulators) {
+				done.add(pool.submit(new Runnable() {
+					public void run() {
+						for (int i=0; i<keys.length; i++)
+							s.access(i, keys[i], writes[i]);
+					}
+				}));
+			}
+			for (Future<?> f : done)
+				f.get();
+		}
+		finally {
+			pool.shutdown();
+		}
+		return simulators;
+	}
+
+	/**
+	One replacement policy replaying the trace with a fixed number of frames
+	 */
+	public abstract static class Simulator {
+		final int frames;
+		long faults;
+		long writeBacks;
+
+		Simulator(int frames) {
+			if (frames < 1)
+				throw new IllegalArgumentException("frames must be at least 1: " + frames);
+			this.frames = frames;
+		}
+
+		public abstract String getName();
+
+		/**
+		Replays reference number i, to the page with the given key
+		 */
+		abstract void access(int i, long key, boolean write);
+
+		public int getFrames() {
+			return frames;
+		}
+
+		public long getFaults() {
+			return faults;
+		}
+
+		public long getWriteBacks() {
+			return writeBacks;
+		}
+	}
+
+	/**
+	Base of the clock-style simulators: pages live in slots with
+	reference and dirty bits, swept by a hand
+	 */
+	abstract static class SlotSimulator extends Simulator {
+		long[] slotKeys;
+		boolean[] referenced;
+		boolean[] dirty;
+		HashMap<Long, Integer> slots = new HashMap<Long, Integer>();
+		int used;
+		int hand;
+
+		SlotSimulator(int frames) {
+			super(frames);
+			slotKeys = new long[frames];
+			referenced = new boolean[frames];
+			dirty = new boolean[frames];
+		}
+
+		void access(int i, long key, boolean write) {
+			Integer slot = slots.get(key);
+			if (slot == null) {
+				faults++;
+				if (used < frames)
+					slot = used++;
+				else {
+					slot = victim();
+					if (dirty[slot])
+						writeBacks++;
+					slots.remove(slotKeys[slot]);
+				}
+				slotKeys[slot] = key;
+				slots.put(key, slot);
+				dirty[slot] = false;
+			}
+			referenced[slot] = true;
+			if (write)
+				dirty[slot] = true;
+		}
+
+		abstract int victim();
+	}
+
+	static class Clock extends SlotSimulator {
+		Clock(int frames) {
+			super(frames);
+		}
+
+		public String getName() {
+			return "clock";
+		}
+
+		int victim() {
+			while (referenced[hand]) { // Second chance
+				referenced[hand] = false;
+				hand = (hand + 1) % frames;
+			}
+			int victim = hand;
+			hand = (hand + 1) % frames;
+			return victim;
+		}
+	}
+
+	static class Esc extends SlotSimulator {
+		Esc(int frames) {
+			super(frames);
+		}
+
+		public String getName() {
+			return "esc";
+		}
+
+		int victim() {
+			while (true) {
+				for (int n=0; n<frames; n++) { // Look for (0,0) without touching the bits
+					int slot = (hand + n) % frames;
+					if (!referenced[slot] && !dirty[slot]) {
+						hand = (slot + 1) % frames;
+						return slot;
+					}
+				}
+				for (int n=0; n<frames; n++) { // Look for (0,1), clearing reference bits
+					int slot = (hand + n) % frames;
+					if (!referenced[slot] && dirty[slot]) {
+						hand = (slot + 1) % frames;
+						return slot;
+					}
+					referenced[slot] = false;
+				}
+			}
+		}
+	}
+
+	static class Lru extends Simulator {
+		// Access-ordered: iteration starts at the least recently used page
+		private LinkedHashMap<Long, Boolean> pages = new LinkedHashMap<Long, Boolean>(16, 0.75f, true);
+
+		Lru(int frames) {
+			super(frames);
+		}
+
+		public String getName() {
+			return "lru";
+		}
+
+		void access(int i, long key, boolean write) {
+			Boolean dirty = pages.get(key);
+			if (dirty == null) {
+				faults++;
+				if (pages.size() == frames) {
+					Iterator<Map.Entry<Long, Boolean>> it = pages.entrySet().iterator();
+					if (it.next().getValue())
+						writeBacks++;
+					it.remove();
+				}
+				dirty = false;
+			}
+			pages.put(key, dirty || write);
+		}
+	}
+
+	static class Arc extends Simulator {
+		private LinkedHashSet<Long> t1 = new LinkedHashSet<Long>();
+		private LinkedHashSet<Long> t2 = new LinkedHashSet<Long>();
+		private LinkedHashSet<Long> b1 = new LinkedHashSet<Long>();
+		private LinkedHashSet<Long> b2 = new LinkedHashSet<Long>();
+		private HashSet<Long> dirtyPages = new HashSet<Long>();
+		private int p;
+
+		Arc(int frames) {
+			super(frames);
+		}
+
+		public String getName() {
+			return "arc";
+		}
+
+		void access(int i, long key, boolean write) {
+			if (t1.remove(key) || t2.remove(key)) // Hit
+				t2.add(key);
+			else {
+				faults++;
+				if (b1.contains(key)) {
+					p = Math.min(frames, p + Math.max(b2.size() / Math.max(b1.size(), 1), 1));
+					replace(false);
+					b1.remove(key);
+					t2.add(key);
+				}
+				else if (b2.contains(key)) {
+					p = Math.max(0, p - Math.max(b1.size() / Math.max(b2.size(), 1), 1));
+					replace(true);
+					b2.remove(key);
+					t2.add(key);
+				}
+				else {
+					if (t1.size() + b1.size() == frames) {
+						if (t1.size() < frames) {
+							removeHead(b1);
+							replace(false);
+						}
+						else
+							evict(removeHead(t1));
+					}
+					else if (t1.size() + t2.size() + b1.size() + b2.size() >= frames) {
+						if (t1.size() + t2.size() + b1.size() + b2.size() == 2 * frames)
+							removeHead(b2);
+						replace(false);
+					}
+					t1.add(key);
+				}
+			}
+			if (write)
+				dirtyPages.add(key);
+		}
+
+		private void replace(boolean inB2) {
+			if (t1.size() + t2.size() < frames) // A frame is still free
+				return;
+			if (!t1.isEmpty() && (t1.size() > p || (inB2 && t1.size() == p))) {
+				long key = removeHead(t1);
+				evict(key);
+				b1.add(key);
+			}
+			else {
+				long key = removeHead(t2);
+				evict(key);
+				b2.add(key);
+			}
+		}
+
+		private void evict(long key) {
+			if (dirtyPages.remove(key))
+				writeBacks++;
+		}
+
+		private static long removeHead(LinkedHashSet<Long> list) {
+			Iterator<Long> it = list.iterator();
+			long key = it.next();
+			it.remove();
+			return key;
+		}
+	}
+
+	class Opt extends Simulator {
+		private HashMap<Long, Integer> next = new HashMap<Long, Integer>(); // Next use of each resident page
+		private HashSet<Long> dirtyPages = new HashSet<Long>();
+		// Resident pages by next use, latest first; stale entries are skipped
+		private PriorityQueue<long[]> byNextUse = new PriorityQueue<long[]>(16, new Comparator<long[]>() {
+			public int compare(long[] a, long[] b) {
+				return Long.compare(b[0], a[0]);
+			}
+		});
+
+		Opt(int frames) {
+			super(frames);
+		}
+
+		public String getName() {
+			return "opt";
+		}
+
+		void access(int i, long key, boolean write) {
+			if (!next.containsKey(key)) {
+				faults++;
+				if (next.size() == frames) {
+					while (true) { // Evict the page used furthest in the future
+						long[] top = byNextUse.poll();
+						Integer current = next.get(top[1]);
+						if (current != null && current == top[0]) {
+							next.remove(top[1]);
+							if (dirtyPages.remove(top[1]))
+								writeBacks++;
+							break;
+						}
+					}
+				}
+			}
+			next.put(key, nextUse[i]);
+			byNextUse.add(new long[] {nextUse[i], key});
+			if (write)
+				dirtyPages.add(key);
+		}
+	}
+}
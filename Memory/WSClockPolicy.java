@@ -0,0 +1,77 @@
+package osp.Memory;
+import osp.Hardware.*;
+
+/**
+   WSClock. Each frame remembers the time of its last observed reference.
+   The hand (MMU.Cursor) skips referenced frames, stamping them with the
+   current time, and stops at the first clean frame that has been out of
+   the working set, i.e. unreferenced for longer than tau ticks. If only
+   dirty frames are out of the working set, the first of them is returned.
+   Otherwise the frame with the oldest reference is returned, clean first.
+
+   tau is read from the osp.memory.wsclock.tau property.
+
+   @OSPProject Memory
+ */
+class WSClockPolicy implements ReplacementPolicy {
+
+	private long[] lastUse; // Time of last reference, indexed by frame ID
+	private long tau; // Working set window in clock ticks
+
+	WSClockPolicy() {
+		lastUse = new long[MMU.getFrameTableSize()];
+		tau = Long.getLong("osp.memory.wsclock.tau", 500);
+	}
+
+	public String getName() {
+		return "wsclock";
+	}
+
+	public FrameTableEntry selectVictim(PageTableEntry page) {
+		if (PageFaultHandler.numFreeFrames() > 0) // Use a free frame if there is one
+			return PageFaultHandler.getFreeFrame();
+
+		long now = HClock.get();
+		FrameTableEntry oldDirty = null; // First dirty frame outside the working set
+		FrameTableEntry oldest = null; // Fallback when nothing is outside the working set
+
+		for (int counter=0; counter < MMU.getFrameTableSize(); counter++) {
+			FrameTableEntry frame = MMU.getFrame(MMU.Cursor);
+			MemoryStats.sweepStep();
+			MMU.Cursor = (MMU.Cursor + 1) % MMU.getFrameTableSize(); // Advance the hand
+
+			if (frame.getLockCount() > 0 || frame.isReserved() || frame.getPage() == null)
+				continue;
+
+			if (frame.isReferenced()) { // In the working set
+				frame.clearReferenced();
+				lastUse[frame.getID()] = now;
+			}
+			else if (now - lastUse[frame.getID()] > tau) { // Out of the working set
+				if (!frame.isDirty())
+					return frame;
+				if (oldDirty == null)
+					oldDirty = frame;
+			}
+
+			if (oldest == null
+					|| (oldest.isDirty() && !frame.isDirty())
+					|| (oldest.isDirty() == frame.isDirty() && lastUse[frame.getID()] < lastUse[oldest.getID()]))
+				oldest = frame;
+		}
+
+		if (oldDirty != null)
+			return oldDirty;
+		return oldest;
+	}
+
+	public void pageIn(FrameTableEntry frame) {
+		lastUse[frame.getID()] = HClock.get();
+	}
+
+	public void pageOut(FrameTableEntry frame, PageTableEntry page) {
+	}
+
+	public void reference(FrameTableEntry frame, int referenceType) {
+	}
+}
@@ -0,0 +1,98 @@
+package osp.Threads;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.TreeSet;
+import java.util.Vector;
+
+/**
+   Completely fair scheduling. Every thread accumulates virtual runtime:
+   the CPU time it used, divided by its weight. The ready threads are
+   kept in a TreeSet, a red-black tree, ordered by virtual runtime, and
+   the one that has had the least is run next. Adding, removing and
+   looking up a thread are all O(log n).
+
+   The weight of a thread is 1024 * 1.25^priority, with the priority
+   clamped to -20 .. 20, so each priority step gives about 25% more CPU.
+   The quantum is osp.threads.cfs.latency ticks (default 100) divided by
+   the number of runnable threads, but never less than
+   osp.threads.cfs.granularity ticks (default 5).
+
+   A thread that becomes ready after waiting gets at least the smallest
+   virtual runtime in the tree less half the latency, so a long wait does
+   not earn it a long run.
+
+   @OSPProject Threads
+ */
+class CfsQueue implements ReadyQueue {
+
+	private TreeSet<ThreadCB> tree;
+	private long latency;
+	private long granularity;
+	private double minVruntime; // Smallest virtual runtime run so far, never decreases
+
+	CfsQueue() {
+		latency = Math.max(1, Long.getLong("osp.threads.cfs.latency", 100));
+		granularity = Math.max(1, Long.getLong("osp.threads.cfs.granularity", 5));
+		minVruntime = 0;
+		tree = new TreeSet<ThreadCB>(new Comparator<ThreadCB>() {
+			public int compare(ThreadCB a, ThreadCB b) { //least virtual runtime first
+				int c = Double.compare(a.vruntime, b.vruntime);
+				if (c == 0)
+					c = a.getID() - b.getID();
+				return c;
+			}
+		});
+	}
+
+	private static double weight(ThreadCB thread) {
+		return 1024 * Math.pow(1.25, Math.max(-20, Math.min(20, thread.getPriority())));
+	}
+
+	public String getName() {
+		return "cfs";
+	}
+
+	public void add(ThreadCB thread) {
+		thread.vruntime = Math.max(thread.vruntime, minVruntime - latency / 2.0);
+		tree.add(thread);
+	}
+
+	public void preempt(ThreadCB thread) {
+		tree.add(thread);
+	}
+
+	public long quantum(ThreadCB thread) {
+		return Math.max(granularity, latency / (tree.size() + 1)); //runnable: the tree and thread
+	}
+
+	public void ran(ThreadCB thread, long ticks, boolean blocked) {
+		thread.vruntime += ticks * 1024 / weight(thread);
+	}
+
+	public boolean preempts(ThreadCB ready, ThreadCB running) {
+		return false; //the quantum is short enough
+	}
+
+	public ThreadCB removeNext() {
+		ThreadCB thread = tree.pollFirst(); //null if the tree is empty
+		if (thread != null)
+			minVruntime = Math.max(minVruntime, thread.vruntime);
+		return thread;
+	}
+
+	public boolean remove(ThreadCB thread) {
+		return tree.remove(thread);
+	}
+
+	public boolean contains(ThreadCB thread) {
+		return tree.contains(thread);
+	}
+
+	public boolean isEmpty() {
+		return tree.isEmpty();
+	}
+
+	public Enumeration threads() {
+		return new Vector<ThreadCB>(tree).elements();
+	}
+}
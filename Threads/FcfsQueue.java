@@ -0,0 +1,60 @@
+package osp.Threads;
+import java.util.Enumeration;
+import osp.Utilities.*;
+
+/**
+   First come, first served: a FIFO GenericList served from the head.
+   This is the default scheduler.
+
+   @OSPProject Threads
+ */
+class FcfsQueue implements ReadyQueue {
+
+	private GenericList queue = new GenericList();
+
+	public String getName() {
+		return "fcfs";
+	}
+
+	public void add(ThreadCB thread) {
+		queue.append(thread); //add thread at the end of ready queue
+	}
+
+	public void preempt(ThreadCB thread) {
+		add(thread);
+	}
+
+	public long quantum(ThreadCB thread) {
+		return 0; //runs until it blocks
+	}
+
+	public void ran(ThreadCB thread, long ticks, boolean blocked) {
+	}
+
+	public boolean preempts(ThreadCB ready, ThreadCB running) {
+		return false;
+	}
+
+	public ThreadCB removeNext() {
+		return (ThreadCB) queue.removeHead(); //null if the queue is empty
+	}
+
+	public boolean remove(ThreadCB thread) {
+		if (!queue.contains(thread))
+			return false;
+		queue.remove(thread);
+		return true;
+	}
+
+	public boolean contains(ThreadCB thread) {
+		return queue.contains(thread);
+	}
+
+	public boolean isEmpty() {
+		return queue.isEmpty();
+	}
+
+	public Enumeration threads() {
+		return queue.forwardIterator();
+	}
+}
@@ -0,0 +1,141 @@
+package osp.Threads;
+import java.util.*;
+import osp.Utilities.*;
+import osp.IFLModules.*;
+import osp.Tasks.*;
+import osp.Hardware.*;
+import osp.Memory.*;
+
+/**
+   Medium-term scheduler for load control. Every osp.threads.loadcontrol.interval
+   ticks it looks at the number of pagefaults in the last interval and at the
+   number of free frames. If there were more than osp.threads.loadcontrol.high
+   faults and no more than MMU.wantFree frames are free, the ready task with
+   the largest resident set is swapped out: its clean frames are released,
+   its dirty frames are written back and released by the PageOutDaemon on the
+   next tick, and its threads are parked instead of dispatched. When an interval has fewer
+   than osp.threads.loadcontrol.low faults, or nothing else is ready to run,
+   the task swapped out first is brought back.
+
+   Turned on with osp.threads.loadcontrol=true.
+
+   @OSPProject Threads
+ */
+class LoadController {
+
+	private static boolean enabled;
+	private static long interval;
+	private static long high;
+	private static long low;
+
+	private static long lastCheck; // Time of the last check
+	private static long lastFaults; // Pagefault count at the last check
+
+	private static ArrayList<TaskCB> swappedOut; // Oldest first
+	private static GenericList parked; // Ready threads of swapped out tasks
+
+	static void init() {
+		enabled = Boolean.getBoolean("osp.threads.loadcontrol");
+		interval = Long.getLong("osp.threads.loadcontrol.interval", 500);
+		high = Long.getLong("osp.threads.loadcontrol.high", 20);
+		low = Long.getLong("osp.threads.loadcontrol.low", 5);
+		lastCheck = 0;
+		lastFaults = 0;
+		swappedOut = new ArrayList<TaskCB>();
+		parked = new GenericList();
+	}
+
+	static boolean isSwappedOut(TaskCB task) {
+		return enabled && swappedOut.contains(task);
+	}
+
+	/**
+	Holds a ready thread of a swapped out task until the task comes back
+	 */
+	static void park(ThreadCB thread) {
+		parked.append(thread);
+	}
+
+	/**
+	Forgets a thread that is killed while parked. Returns true if it was parked.
+	 */
+	static boolean remove(ThreadCB thread) {
+		if (!enabled || !parked.contains(thread))
+			return false;
+		parked.remove(thread);
+		return true;
+	}
+
+	/**
+	Called by do_dispatch(). Once per interval, swaps a task out under
+	memory pressure or brings one back when the pressure is gone.
+	 */
+	static void check(ReadyQueue readyQueue) {
+		if (!enabled || HClock.get() - lastCheck < interval)
+			return;
+
+		long faults = MemoryStats.getFaults() - lastFaults; // Pagefaults in the last interval
+		lastCheck = HClock.get();
+		lastFaults = MemoryStats.getFaults();
+
+		if (faults > high && MemoryStats.getFreeFrames() <= MMU.wantFree)
+			swapOut(readyQueue);
+		else if (faults < low)
+			bringBack(readyQueue);
+	}
+
+	/**
+	Swaps out the ready task with the largest resident set, unless it is
+	the only task left that can run
+	 */
+	private static void swapOut(ReadyQueue readyQueue) {
+		TaskCB running = null;
+		try { //retrieve current task
+			running = MMU.getPTBR().getTask();
+		}
+		catch(NullPointerException e) {
+		}
+
+		HashSet<TaskCB> active = new HashSet<TaskCB>(); // Tasks that can run
+		if (running != null)
+			active.add(running);
+		TaskCB victim = null;
+		Enumeration e = readyQueue.threads();
+		while (e.hasMoreElements()) {
+			TaskCB task = ((ThreadCB) e.nextElement()).getTask();
+			active.add(task);
+			if (task != running && (victim == null
+					|| task.getPageTable().getResidentCount() > victim.getPageTable().getResidentCount()))
+				victim = task;
+		}
+
+		if (victim == null || active.size() < 2) // Someone must keep running
+			return;
+
+		swappedOut.add(victim);
+		int released = victim.getPageTable().releaseFrames();
+		MyOut.print("osp.Threads.LoadController", "Swapped out " + victim + ", released " + released + " frames");
+	}
+
+	/**
+	Brings back the task swapped out first: its parked threads go back
+	on the ready queue. Returns false if no task is swapped out.
+	 */
+	static boolean bringBack(ReadyQueue readyQueue) {
+		if (!enabled || swappedOut.isEmpty())
+			return false;
+
+		TaskCB task = swappedOut.remove(0);
+		GenericList stillParked = new GenericList();
+		while (!parked.isEmpty()) {
+			ThreadCB thread = (ThreadCB) parked.removeHead();
+			if (thread.getTask() == task)
+				readyQueue.add(thread);
+			else
+				stillParked.append(thread);
+		}
+		parked = stillParked;
+		MyOut.print("osp.Threads.LoadController", "Brought back " + task);
+		return true;
+	}
+}
@@ -0,0 +1,157 @@
+package osp.Threads;
+import java.util.Enumeration;
+import java.util.Vector;
+import osp.Utilities.*;
+import osp.Hardware.*;
+
+/**
+   Multilevel feedback queue. Level 0 is served first and has the
+   shortest quantum, osp.threads.mlfq.quantum ticks (default 20); each
+   level below doubles it. There are osp.threads.mlfq.levels levels
+   (default 3, at most 64), found through a bitmap of non-empty levels
+   as in PriorityLevels.
+
+   New threads start at level 0. A thread that uses up its quantum is
+   demoted one level, and a thread that becomes ready again after
+   waiting, usually for I/O, is promoted one level. Every
+   osp.threads.mlfq.boost ticks (default 1000) all threads are moved
+   back to level 0, so CPU-bound threads at the bottom are not starved.
+   Ready threads are moved at once; a thread that is waiting or running
+   at the boost is reset when it next comes back to the queue, found by
+   the boost epoch it last saw.
+
+   @OSPProject Threads
+ */
+class MlfqQueue implements ReadyQueue {
+
+	private GenericList[] queues;
+	private long nonEmpty; // Bit i set while queues[i] is not empty
+	private long baseQuantum;
+	private long boostInterval;
+	private long lastBoost;
+	private int epoch; // Number of boosts so far
+
+	MlfqQueue() {
+		int levels = Math.max(1, Math.min(64, Integer.getInteger("osp.threads.mlfq.levels", 3)));
+		baseQuantum = Math.max(1, Long.getLong("osp.threads.mlfq.quantum", 20));
+		boostInterval = Long.getLong("osp.threads.mlfq.boost", 1000);
+		queues = new GenericList[levels];
+		for (int i=0; i<levels; i++)
+			queues[i] = new GenericList();
+		nonEmpty = 0;
+		lastBoost = 0;
+		epoch = 0;
+	}
+
+	public String getName() {
+		return "mlfq";
+	}
+
+	/**
+	A new thread is at level 0 already; a thread back from waiting goes
+	up one level
+	 */
+	public void add(ThreadCB thread) {
+		catchUp(thread);
+		thread.level = Math.max(0, thread.level - 1);
+		append(thread);
+	}
+
+	/**
+	The thread used up its quantum, so it goes down one level
+	 */
+	public void preempt(ThreadCB thread) {
+		catchUp(thread);
+		thread.level = Math.min(queues.length - 1, thread.level + 1);
+		append(thread);
+	}
+
+	/**
+	Resets the level of a thread that was not in the queue at the last
+	boost
+	 */
+	private void catchUp(ThreadCB thread) {
+		if (thread.boostEpoch != epoch) {
+			thread.level = 0;
+			thread.boostEpoch = epoch;
+		}
+	}
+
+	public long quantum(ThreadCB thread) {
+		return baseQuantum << Math.min(thread.level, 20);
+	}
+
+	public void ran(ThreadCB thread, long ticks, boolean blocked) {
+	}
+
+	public boolean preempts(ThreadCB ready, ThreadCB running) {
+		return false;
+	}
+
+	private void append(ThreadCB thread) {
+		queues[thread.level].append(thread);
+		nonEmpty |= 1L << thread.level;
+	}
+
+	public ThreadCB removeNext() {
+		if (boostInterval > 0 && HClock.get() - lastBoost >= boostInterval)
+			boost();
+		if (nonEmpty == 0)
+			return null;
+
+		int level = Long.numberOfTrailingZeros(nonEmpty); //highest non-empty level
+		ThreadCB thread = (ThreadCB) queues[level].removeHead();
+		if (queues[level].isEmpty())
+			nonEmpty &= ~(1L << level);
+		return thread;
+	}
+
+	/**
+	Moves every ready thread to the tail of level 0, in level order, and
+	starts a new epoch so the other threads are reset by catchUp()
+	 */
+	private void boost() {
+		lastBoost = HClock.get();
+		epoch++;
+		Enumeration e = queues[0].forwardIterator();
+		while (e.hasMoreElements())
+			((ThreadCB) e.nextElement()).boostEpoch = epoch;
+		for (int level=1; level<queues.length; level++) {
+			while (!queues[level].isEmpty()) {
+				ThreadCB thread = (ThreadCB) queues[level].removeHead();
+				thread.level = 0;
+				thread.boostEpoch = epoch;
+				queues[0].append(thread);
+			}
+		}
+		nonEmpty = queues[0].isEmpty() ? 0 : 1;
+	}
+
+	public boolean remove(ThreadCB thread) {
+		GenericList queue = queues[thread.level];
+		if (!queue.contains(thread))
+			return false;
+		queue.remove(thread);
+		if (queue.isEmpty())
+			nonEmpty &= ~(1L << thread.level);
+		return true;
+	}
+
+	public boolean contains(ThreadCB thread) {
+		return queues[thread.level].contains(thread);
+	}
+
+	public boolean isEmpty() {
+		return nonEmpty == 0;
+	}
+
+	public Enumeration threads() {
+		Vector<ThreadCB> all = new Vector<ThreadCB>();
+		for (GenericList queue : queues) {
+			Enumeration e = queue.forwardIterator();
+			while (e.hasMoreElements())
+				all.add((ThreadCB) e.nextElement());
+		}
+		return all.elements();
+	}
+}
@@ -0,0 +1,133 @@
+package osp.Threads;
+import java.util.Enumeration;
+import java.util.Vector;
+import osp.Utilities.*;
+import osp.Hardware.*;
+
+/**
+   Priority scheduling in O(1). There is one FIFO GenericList per
+   priority level and a bitmap with bit i set while level i is not
+   empty, so the next thread is taken from the highest non-empty level
+   with one numberOfLeadingZeros(), however many threads are ready.
+
+   A thread's level is its priority, clamped to 0 .. levels-1; higher
+   levels run first. osp.threads.priority.levels sets the number of
+   levels (default 8, at most 64).
+
+   Aging: on every dispatch the thread at the head of each non-empty
+   level, the one that has waited longest there, moves up one level if
+   it has waited osp.threads.priority.aging ticks (default 200). This
+   touches at most one thread per level, so it stays O(1) too. The
+   thread is back at its own level the next time it becomes ready.
+
+   @OSPProject Threads
+ */
+class PriorityLevels implements ReadyQueue {
+
+	private GenericList[] queues;
+	private long nonEmpty; // Bit i set while queues[i] is not empty
+	private long agingInterval;
+
+	PriorityLevels() {
+		int levels = Math.max(1, Math.min(64, Integer.getInteger("osp.threads.priority.levels", 8)));
+		agingInterval = Long.getLong("osp.threads.priority.aging", 200);
+		queues = new GenericList[levels];
+		for (int i=0; i<levels; i++)
+			queues[i] = new GenericList();
+		nonEmpty = 0;
+	}
+
+	public String getName() {
+		return "priority";
+	}
+
+	public void add(ThreadCB thread) {
+		thread.level = Math.max(0, Math.min(queues.length - 1, thread.getPriority()));
+		thread.readyTime = HClock.get();
+		append(thread);
+	}
+
+	public void preempt(ThreadCB thread) {
+		add(thread);
+	}
+
+	public long quantum(ThreadCB thread) {
+		return 0; //runs until it blocks
+	}
+
+	public void ran(ThreadCB thread, long ticks, boolean blocked) {
+	}
+
+	public boolean preempts(ThreadCB ready, ThreadCB running) {
+		return false;
+	}
+
+	private void append(ThreadCB thread) {
+		queues[thread.level].append(thread);
+		nonEmpty |= 1L << thread.level;
+	}
+
+	public ThreadCB removeNext() {
+		if (nonEmpty == 0)
+			return null;
+		age();
+
+		int level = 63 - Long.numberOfLeadingZeros(nonEmpty); //highest non-empty level
+		ThreadCB thread = (ThreadCB) queues[level].removeHead();
+		if (queues[level].isEmpty())
+			nonEmpty &= ~(1L << level);
+		return thread;
+	}
+
+	/**
+	Moves the longest waiting thread of each level up one level if it
+	has waited agingInterval ticks. Levels are visited from the top, so
+	a thread moves at most once per call.
+	 */
+	private void age() {
+		long now = HClock.get();
+		long levels = nonEmpty & ~(1L << (queues.length - 1)); //the top level cannot go higher
+		while (levels != 0) {
+			int level = 63 - Long.numberOfLeadingZeros(levels);
+			levels &= ~(1L << level);
+
+			ThreadCB head = (ThreadCB) queues[level].getHead();
+			if (now - head.readyTime < agingInterval)
+				continue;
+			queues[level].removeHead();
+			if (queues[level].isEmpty())
+				nonEmpty &= ~(1L << level);
+			head.level = level + 1;
+			head.readyTime = now; //waits again before the next promotion
+			append(head);
+		}
+	}
+
+	public boolean remove(ThreadCB thread) {
+		GenericList queue = queues[thread.level];
+		if (!queue.contains(thread))
+			return false;
+		queue.remove(thread);
+		if (queue.isEmpty())
+			nonEmpty &= ~(1L << thread.level);
+		return true;
+	}
+
+	public boolean contains(ThreadCB thread) {
+		return queues[thread.level].contains(thread);
+	}
+
+	public boolean isEmpty() {
+		return nonEmpty == 0;
+	}
+
+	public Enumeration threads() {
+		Vector<ThreadCB> all = new Vector<ThreadCB>();
+		for (GenericList queue : queues) {
+			Enumeration e = queue.forwardIterator();
+			while (e.hasMoreElements())
+				all.add((ThreadCB) e.nextElement());
+		}
+		return all.elements();
+	}
+}
@@ -0,0 +1,74 @@
+package osp.Threads;
+import java.util.Enumeration;
+
+/**
+   The ready queue of the CPU scheduler. The queue used by ThreadCB is
+   chosen once in ThreadCB.init() from the osp.threads.scheduler property
+   and stored in ThreadCB.readyQueue.
+
+   do_create() and do_resume() add() threads that become ready,
+   do_dispatch() takes the next thread to run with removeNext(), and
+   do_kill() remove()s a ready thread that is killed. A scheduler with
+   time slices returns a quantum() for each thread it picks; when the
+   quantum runs out the timer interrupt handler hands the thread back
+   with preempt(). ran() reports the CPU time of every thread that
+   leaves the CPU, and preempts() lets a thread that has just become
+   ready take the CPU from the running thread.
+
+   @OSPProject Threads
+ */
+interface ReadyQueue {
+
+	/**
+	Returns the name of the scheduler as used in the osp.threads.scheduler property
+	 */
+	String getName();
+
+	/**
+	Adds a thread that has become ready
+	 */
+	void add(ThreadCB thread);
+
+	/**
+	Adds the running thread back after its quantum ran out
+	 */
+	void preempt(ThreadCB thread);
+
+	/**
+	Returns the time slice of thread, just picked by removeNext(), in
+	ticks, or 0 to let it run until it blocks
+	 */
+	long quantum(ThreadCB thread);
+
+	/**
+	Called when thread leaves the CPU after running for ticks ticks
+
+	@param blocked true if the thread is now waiting, which ends its CPU
+	burst, false if it was preempted
+	 */
+	void ran(ThreadCB thread, long ticks, boolean blocked);
+
+	/**
+	Returns true if ready, just added, should take the CPU from running
+	 */
+	boolean preempts(ThreadCB ready, ThreadCB running);
+
+	/**
+	Removes and returns the thread to run next, or null if the queue is empty
+	 */
+	ThreadCB removeNext();
+
+	/**
+	Removes thread from the queue. Returns false if it was not there.
+	 */
+	boolean remove(ThreadCB thread);
+
+	boolean contains(ThreadCB thread);
+
+	boolean isEmpty();
+
+	/**
+	Returns the threads in the queue, in no particular order
+	 */
+	Enumeration threads();
+}
@@ -0,0 +1,109 @@
+package osp.Threads;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.TreeSet;
+import java.util.Vector;
+import osp.Hardware.*;
+
+/**
+   Shortest remaining time first. The length of each thread's next CPU
+   burst is predicted by exponential averaging of its measured bursts,
+
+       prediction = alpha * last burst + (1 - alpha) * prediction
+
+   with alpha = osp.threads.srt.alpha (default 0.5) and a first
+   prediction of osp.threads.srt.initial ticks (default 10). The ready
+   threads are kept in a TreeSet ordered by their prediction minus the
+   CPU time already used in the current burst, so the shortest is taken
+   in O(log n).
+
+   With osp.threads.srt.preempt=true a thread that becomes ready with a
+   shorter remaining time than the running thread takes the CPU from it.
+
+   @OSPProject Threads
+ */
+class SrtQueue implements ReadyQueue {
+
+	private TreeSet<ThreadCB> queue;
+	private double alpha;
+	private double initial;
+	private boolean preemptive;
+
+	SrtQueue() {
+		alpha = Math.max(0, Math.min(1, Double.parseDouble(System.getProperty("osp.threads.srt.alpha", "0.5"))));
+		initial = Math.max(1, Long.getLong("osp.threads.srt.initial", 10));
+		preemptive = Boolean.getBoolean("osp.threads.srt.preempt");
+		queue = new TreeSet<ThreadCB>(new Comparator<ThreadCB>() {
+			public int compare(ThreadCB a, ThreadCB b) { //shortest remaining time, then longest waiting
+				int c = Double.compare(remaining(a), remaining(b));
+				if (c == 0)
+					c = a.readyTime < b.readyTime ? -1 : a.readyTime > b.readyTime ? 1 : 0;
+				if (c == 0)
+					c = a.getID() - b.getID();
+				return c;
+			}
+		});
+	}
+
+	/**
+	Returns the predicted CPU time thread needs before its burst ends.
+	Only changes while the thread runs, so it is a stable key in the set.
+	 */
+	private static double remaining(ThreadCB thread) {
+		return thread.predictedBurst - thread.burstTime;
+	}
+
+	public String getName() {
+		return "srt";
+	}
+
+	public void add(ThreadCB thread) {
+		if (thread.predictedBurst == 0) //new thread
+			thread.predictedBurst = initial;
+		thread.readyTime = HClock.get();
+		queue.add(thread);
+	}
+
+	public void preempt(ThreadCB thread) {
+		add(thread);
+	}
+
+	public long quantum(ThreadCB thread) {
+		return 0; //runs until it blocks or is preempted by a shorter thread
+	}
+
+	public void ran(ThreadCB thread, long ticks, boolean blocked) {
+		thread.burstTime += ticks;
+		if (blocked) { //burst is over, fold it into the prediction
+			thread.predictedBurst = alpha * thread.burstTime + (1 - alpha) * thread.predictedBurst;
+			thread.burstTime = 0;
+		}
+	}
+
+	public boolean preempts(ThreadCB ready, ThreadCB running) {
+		if (!preemptive)
+			return false;
+		double runningLeft = remaining(running) - (HClock.get() - running.dispatchTime);
+		return remaining(ready) < runningLeft;
+	}
+
+	public ThreadCB removeNext() {
+		return queue.pollFirst(); //null if the queue is empty
+	}
+
+	public boolean remove(ThreadCB thread) {
+		return queue.remove(thread);
+	}
+
+	public boolean contains(ThreadCB thread) {
+		return queue.contains(thread);
+	}
+
+	public boolean isEmpty() {
+		return queue.isEmpty();
+	}
+
+	public Enumeration threads() {
+		return new Vector<ThreadCB>(queue).elements();
+	}
+}
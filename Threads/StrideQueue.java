@@ -0,0 +1,157 @@
+package osp.Threads;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.TreeSet;
+import java.util.Vector;
+import java.util.WeakHashMap;
+import osp.Utilities.*;
+import osp.Tasks.*;
+
+/**
+   Proportional-share stride scheduling across tasks. Each task holds
+   tickets, osp.threads.stride.tickets (default 100) or
+   osp.threads.stride.tickets.<task ID> for that task, and its stride is
+   STRIDE1 / tickets. The task with the smallest pass runs next, and its
+   pass grows by its stride times the ticks its thread ran, so over time
+   every task gets CPU in proportion to its tickets, however many
+   threads it has. Within a task the ready threads take turns (FIFO).
+
+   Tasks with ready threads are kept in a TreeSet ordered by pass. A
+   task that has had no ready threads rejoins at the current global
+   pass, so it cannot save up CPU while idle. Threads run for
+   osp.threads.stride.quantum ticks (default 20) so tasks interleave.
+
+   The state of each task is kept in a WeakHashMap, so tasks that are
+   gone are dropped with it.
+
+   @OSPProject Threads
+ */
+class StrideQueue implements ReadyQueue {
+
+	private static final long STRIDE1 = 1 << 20;
+
+	/**
+	Scheduling state of one task
+	 */
+	private static class Share {
+		int taskID;
+		long stride;
+		long pass;
+		GenericList ready = new GenericList(); //ready threads of the task
+	}
+
+	private WeakHashMap<TaskCB, Share> shares = new WeakHashMap<TaskCB, Share>();
+	private TreeSet<Share> active; //tasks with ready threads, smallest pass first
+	private long globalPass; //pass of the task picked last, never decreases
+	private int defaultTickets;
+	private long quantum;
+
+	StrideQueue() {
+		defaultTickets = Math.max(1, Integer.getInteger("osp.threads.stride.tickets", 100));
+		quantum = Math.max(1, Long.getLong("osp.threads.stride.quantum", 20));
+		globalPass = 0;
+		active = new TreeSet<Share>(new Comparator<Share>() {
+			public int compare(Share a, Share b) {
+				if (a.pass != b.pass)
+					return a.pass < b.pass ? -1 : 1;
+				return a.taskID - b.taskID;
+			}
+		});
+	}
+
+	/**
+	Returns the state of task, created with its tickets the first time
+	 */
+	private Share shareOf(TaskCB task) {
+		Share share = shares.get(task);
+		if (share == null) {
+			share = new Share();
+			share.taskID = task.getID();
+			int tickets = Math.max(1, Integer.getInteger("osp.threads.stride.tickets." + task.getID(), defaultTickets));
+			share.stride = STRIDE1 / tickets;
+			share.pass = globalPass;
+			shares.put(task, share);
+		}
+		return share;
+	}
+
+	public String getName() {
+		return "stride";
+	}
+
+	public void add(ThreadCB thread) {
+		Share share = shareOf(thread.getTask());
+		if (share.ready.isEmpty()) { //task becomes active
+			share.pass = Math.max(share.pass, globalPass);
+			share.ready.append(thread);
+			active.add(share);
+		}
+		else
+			share.ready.append(thread);
+	}
+
+	public void preempt(ThreadCB thread) {
+		add(thread);
+	}
+
+	public long quantum(ThreadCB thread) {
+		return quantum;
+	}
+
+	/**
+	Charges the ticks the thread ran to its task
+	 */
+	public void ran(ThreadCB thread, long ticks, boolean blocked) {
+		Share share = shareOf(thread.getTask());
+		boolean queued = !share.ready.isEmpty();
+		if (queued) //the pass is the key in the tree
+			active.remove(share);
+		share.pass += share.stride * Math.max(1, ticks);
+		if (queued)
+			active.add(share);
+	}
+
+	public boolean preempts(ThreadCB ready, ThreadCB running) {
+		return false; //the quantum is short enough
+	}
+
+	public ThreadCB removeNext() {
+		Share share = active.pollFirst();
+		if (share == null)
+			return null;
+		globalPass = Math.max(globalPass, share.pass);
+		ThreadCB thread = (ThreadCB) share.ready.removeHead();
+		if (!share.ready.isEmpty()) //task still has ready threads
+			active.add(share);
+		return thread;
+	}
+
+	public boolean remove(ThreadCB thread) {
+		Share share = shares.get(thread.getTask());
+		if (share == null || !share.ready.contains(thread))
+			return false;
+		share.ready.remove(thread);
+		if (share.ready.isEmpty())
+			active.remove(share);
+		return true;
+	}
+
+	public boolean contains(ThreadCB thread) {
+		Share share = shares.get(thread.getTask());
+		return share != null && share.ready.contains(thread);
+	}
+
+	public boolean isEmpty() {
+		return active.isEmpty();
+	}
+
+	public Enumeration threads() {
+		Vector<ThreadCB> all = new Vector<ThreadCB>();
+		for (Share share : active) {
+			Enumeration e = share.ready.forwardIterator();
+			while (e.hasMoreElements())
+				all.add((ThreadCB) e.nextElement());
+		}
+		return all.elements();
+	}
+}
@@ -19,7 +19,17 @@ import osp.Resources.*;
 public class ThreadCB extends IflThreadCB {
 
 	//Global variables
-	static GenericList readyQueue;
+	static ReadyQueue readyQueue;
+	static long quantumEnd; //time the running thread's quantum runs out, 0 if it has none
+
+	//Scheduler state of the thread, kept by the ready queue
+	int level; //priority level the thread is queued at
+	int boostEpoch; //last mlfq boost the thread's level reflects
+	long readyTime; //time the thread was queued
+	long dispatchTime; //time the thread was last dispatched
+	double predictedBurst; //predicted length of the current CPU burst, 0 before the first
+	long burstTime; //CPU time used so far in the current burst
+	double vruntime; //weighted CPU time, for cfs
 
 	/**
        The thread constructor. Must call 
@@ -51,7 +61,9 @@ public class ThreadCB extends IflThreadCB {
 	 * LAST EDIT: 05 MAR 2020
 	 */
 	public static void init() {
-		readyQueue = new GenericList(); //initialize the ready queue
+		readyQueue = createReadyQueue(System.getProperty("osp.threads.scheduler", "fcfs")); //initialize the ready queue
+		quantumEnd = 0;
+		LoadController.init(); //medium-term scheduler, off unless osp.threads.loadcontrol is set
 	}
 
 	/** 
@@ -99,7 +111,7 @@ public class ThreadCB extends IflThreadCB {
 				thread.setPriority(task.getPriority()); //set thread priority same as task priority
 				thread.setStatus(ThreadReady); //set status to ThreadReady
 
-				readyQueue.append(thread); //add thread at the end of ready queue
+				readyQueue.add(thread); //add thread to the ready queue
 				dispatch();
 				return thread;
 			}
@@ -132,11 +144,13 @@ public class ThreadCB extends IflThreadCB {
 
 		switch (getStatus()) { //check the thread status
 		case ThreadReady:
-			readyQueue.remove(this); //remove from ready queue
+			if (!LoadController.remove(this)) //not parked by the load controller
+				readyQueue.remove(this); //remove from ready queue
 			break;
 
 		case ThreadRunning: 
 			if (this == task.getCurrentThread()) { //verify it is the current thread
+				readyQueue.ran(this, HClock.get() - dispatchTime, true); //CPU time of the last run
 				MMU.setPTBR(null); //set PTBR to null
 				this.getTask().setCurrentThread(null); //set task's current thread to null
 			}
@@ -183,6 +197,7 @@ public class ThreadCB extends IflThreadCB {
 
 		if (getStatus() == ThreadRunning) { //if thread is running
 			if (this == MMU.getPTBR().getTask().getCurrentThread()) { //verify it is current thread
+				readyQueue.ran(this, HClock.get() - dispatchTime, true); //CPU burst ends here
 				this.getTask().setCurrentThread(null); //set task's current thread to null
 				MMU.setPTBR(null); //set PTBR to null	
 				setStatus(ThreadWaiting); //set status to ThreadWaiting
@@ -228,8 +243,12 @@ public class ThreadCB extends IflThreadCB {
 		else if (getStatus() > ThreadWaiting)
 			setStatus(getStatus()-1);
 		// Put the thread on the ready queue, if appropriate
-		if (getStatus() == ThreadReady)
-			readyQueue.append(this);
+		if (getStatus() == ThreadReady) {
+			readyQueue.add(this);
+			ThreadCB running = runningThread();
+			if (running != null && readyQueue.preempts(this, running)) //e.g. a shorter job under srt
+				preempt(running);
+		}
 		dispatch();
 
 	}
@@ -264,21 +283,30 @@ public class ThreadCB extends IflThreadCB {
  
 		if(thread != null) { //if there is a currently running thread
 			if (thread.getStatus() == ThreadRunning) { //and its status is ThreadRunning
+				armTimer(); //the daemon may have become due
 				return SUCCESS;
 			}
 		}
 
-		if(readyQueue.isEmpty()) { //if ready queue is empty
+		LoadController.check(readyQueue); //swap tasks out or back in depending on memory pressure
+		newthread = nextReadyThread();
+
+		if(newthread == null) { //if ready queue is empty
 			MMU.setPTBR(null); //set PTBR to null
+			quantumEnd = 0;
+			armTimer();
 			return FAILURE;
 		}
 
 		else { 
-			newthread = (ThreadCB) readyQueue.removeHead(); //get new thread from ready queue's head
 			MMU.setPTBR(newthread.getTask().getPageTable()); //set PTBR to point to thread's page table
+			MMU.switchTLB(newthread.getTask().getPageTable()); //flush the TLB if the address space changed
 			newthread.getTask().setCurrentThread(newthread); //set newthread is current thread of its task
 			newthread.setStatus(ThreadRunning);	//set status to ThreadRunning	
-			HTimer.set(0); //set interrupt timer to 0
+			newthread.dispatchTime = HClock.get();
+			long quantum = readyQueue.quantum(newthread); //0 if the thread runs until it blocks
+			quantumEnd = quantum > 0 ? HClock.get() + quantum : 0;
+			armTimer(); //for the end of the quantum or the page-out daemon, 0 if neither
 			return SUCCESS;
 		}
 
@@ -312,6 +340,100 @@ public class ThreadCB extends IflThreadCB {
        Feel free to add methods/fields to improve the readability of your code
 	 */
 
+	/**
+	Sets the interrupt timer for whichever comes first: the end of the
+	running thread's quantum or the next run of the page-out daemon. The
+	timer is set to 0 if neither is due.
+	 */
+	private static void armTimer() {
+		PageOutDaemon.armTimer(); //schedule the daemon's next run, if it is on
+		long next = PageOutDaemon.getDeadline();
+		if (quantumEnd > 0 && (next == 0 || quantumEnd < next))
+			next = quantumEnd;
+		HTimer.set(next == 0 ? 0 : (int) Math.max(1, next - HClock.get()));
+	}
+
+	/**
+	Called by the timer interrupt handler. If the running thread's quantum
+	has run out, it is taken off the CPU and handed back to the ready queue,
+	so the next dispatch() picks the thread to run.
+	 */
+	static void preemptIfExpired() {
+		if (quantumEnd == 0 || HClock.get() < quantumEnd)
+			return;
+		quantumEnd = 0;
+
+		ThreadCB thread = runningThread();
+		if (thread != null)
+			preempt(thread);
+	}
+
+	/**
+	Takes the running thread off the CPU and hands it back to the ready
+	queue. The caller then calls dispatch().
+	 */
+	private static void preempt(ThreadCB thread) {
+		readyQueue.ran(thread, HClock.get() - thread.dispatchTime, false);
+		thread.getTask().setCurrentThread(null); //set task's current thread to null
+		MMU.setPTBR(null); //set PTBR to null
+		thread.setStatus(ThreadReady);
+		readyQueue.preempt(thread);
+	}
+
+	/**
+	Returns the thread on the CPU, or null if the CPU is idle
+	 */
+	private static ThreadCB runningThread() {
+		ThreadCB thread = null;
+		try { //retrieve current thread
+			thread = MMU.getPTBR().getTask().getCurrentThread();
+		}
+		catch(NullPointerException e) {
+		}
+		if (thread == null || thread.getStatus() != ThreadRunning)
+			return null;
+		return thread;
+	}
+
+	/**
+	Returns the ready queue of the scheduler with the given name: fcfs,
+	priority, mlfq, srt, cfs or stride. Unknown names fall back to fcfs.
+	 */
+	static ReadyQueue createReadyQueue(String name) {
+		if (name.equalsIgnoreCase("priority"))
+			return new PriorityLevels();
+		if (name.equalsIgnoreCase("mlfq"))
+			return new MlfqQueue();
+		if (name.equalsIgnoreCase("srt"))
+			return new SrtQueue();
+		if (name.equalsIgnoreCase("cfs"))
+			return new CfsQueue();
+		if (name.equalsIgnoreCase("stride"))
+			return new StrideQueue();
+		if (!name.equalsIgnoreCase("fcfs"))
+			MyOut.print("osp.Threads.ThreadCB", "Unknown scheduler " + name + ", using fcfs");
+		return new FcfsQueue();
+	}
+
+	/**
+	Removes and returns the next thread picked by the ready queue, or null
+	if there is none. Threads of tasks swapped out by the load controller
+	are parked on the way; if only those are left, a task is brought back
+	rather than leaving the CPU idle.
+	 */
+	private static ThreadCB nextReadyThread() {
+		while (true) {
+			while (!readyQueue.isEmpty()) {
+				ThreadCB thread = readyQueue.removeNext(); //get the next thread the scheduler picks
+				if (!LoadController.isSwappedOut(thread.getTask()))
+					return thread;
+				LoadController.park(thread); //task is swapped out, hold the thread
+			}
+			if (!LoadController.bringBack(readyQueue)) //nothing else to run
+				return null;
+		}
+	}
+
 }
 
 /*
@@ -3,6 +3,7 @@ package osp.Threads;
 import osp.IFLModules.*;
 import osp.Utilities.*;
 import osp.Hardware.*;
+import osp.Memory.*;
 
 /**    
        The timer interrupt handler.  This class is called upon to
@@ -14,7 +15,8 @@ public class TimerInterruptHandler extends IflTimerInterruptHandler
 {
 	/**
        This basically only needs to reset the times and dispatch
-       another process.
+       another process. The page-out daemon runs here when it is due,
+       and a thread whose quantum has run out is preempted.
 
        @OSPProject Threads
 	 */
@@ -25,8 +27,17 @@ public class TimerInterruptHandler extends IflTimerInterruptHandler
 	 */
 	public void do_handleInterrupt() {
 
+		ThreadCB thread = null;
+		try { //retrieve current thread
+			thread = MMU.getPTBR().getTask().getCurrentThread();
+		}
+		catch(NullPointerException e) {
+		}
+
 		HTimer.set(0); //set interrupt timer to 0
-		ThreadCB.dispatch(); //schedule next thread to run
+		PageOutDaemon.run(thread); //write back dirty frames ahead of pagefaults, if the daemon is due
+		ThreadCB.preemptIfExpired(); //time slice over: the running thread goes back to the ready queue
+		ThreadCB.dispatch(); //schedule next thread to run, re-arms the timer
 
 	}
 